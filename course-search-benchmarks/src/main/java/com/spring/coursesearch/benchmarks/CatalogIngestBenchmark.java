@@ -0,0 +1,70 @@
+package com.spring.coursesearch.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.spring.coursesearch.services.DataLoaderService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streaming parse and batching of a catalog file by {@link DataLoaderService#ingest}, with bulk requests stubbed out.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx512m")
+@State(Scope.Benchmark)
+public class CatalogIngestBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    public int documents;
+
+    private DataLoaderService dataLoaderService;
+    private Path catalog;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        ObjectMapper objectMapper = new ObjectMapper();
+        // Only the bulk path is measured; index management, events and the change feed are not involved
+        dataLoaderService = new DataLoaderService(StubElasticsearchOperations.returning(null), objectMapper, null, null,
+                Fixtures.metrics(), null, null);
+
+        catalog = Files.createTempFile("courses-" + documents, ".json");
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(catalog))) {
+            Fixtures.writeCatalog(out, documents, objectMapper);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(catalog);
+    }
+
+    @Benchmark
+    public DataLoaderService.IngestReport ingest() throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(catalog))) {
+            return dataLoaderService.ingest(in, IndexCoordinates.of("courses-benchmark"));
+        }
+    }
+}
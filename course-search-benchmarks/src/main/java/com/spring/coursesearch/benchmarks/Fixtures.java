@@ -0,0 +1,94 @@
+package com.spring.coursesearch.benchmarks;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.spring.coursesearch.entity.CourseSummaryProjection;
+import com.spring.coursesearch.services.CourseIndexManager;
+import com.spring.coursesearch.services.CourseSearchMetrics;
+import com.spring.coursesearch.services.ElasticsearchGuard;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.data.elasticsearch.core.SearchHit;
+import org.springframework.data.elasticsearch.core.SearchHits;
+import org.springframework.data.elasticsearch.core.SearchHitsImpl;
+import org.springframework.data.elasticsearch.core.TotalHitsRelation;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Deterministic test data shared by the benchmarks.
+ */
+final class Fixtures {
+
+    static final String[] CATEGORIES = {"Math", "Science", "Art", "History", "Technology", "Music", "English"};
+    static final String[] TYPES = {"COURSE", "CLUB", "ONE_TIME"};
+
+    private Fixtures() {
+    }
+
+    // Metrics go to an in-memory registry so their recording cost is part of what is measured
+    static CourseSearchMetrics metrics() {
+        return new CourseSearchMetrics(new SimpleMeterRegistry());
+    }
+
+    // Pass-through guard: the stubbed backend never needs protecting and the measurement stays on the calling thread
+    static ElasticsearchGuard guard() {
+        return new ElasticsearchGuard(false, Duration.ofSeconds(2), 20, 2, 200, Duration.ofMillis(500));
+    }
+
+    // Unpartitioned, so searches go to the entity's index without asking Elasticsearch for partitions
+    static CourseIndexManager indexManager() {
+        return new CourseIndexManager(null, null, "none", Duration.ofSeconds(30));
+    }
+
+    static SearchHits<CourseSummaryProjection> searchHits(int count) {
+        List<SearchHit<CourseSummaryProjection>> hits = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            CourseSummaryProjection summary = new CourseSummaryProjection();
+            summary.setId("course_" + i);
+            summary.setTitle("Introduction to Topic " + i);
+            summary.setCategory(CATEGORIES[i % CATEGORIES.length]);
+            summary.setPrice(20.0 + (i % 80));
+            summary.setNextSessionDate("2025-0" + (1 + i % 9) + "-15T10:00:00Z");
+            hits.add(new SearchHit<>("courses", summary.getId(), null, 1.0f,
+                    new Object[]{summary.getPrice(), summary.getId()}, Map.of(), Map.of(), null, null, List.of(),
+                    summary));
+        }
+        return new SearchHitsImpl<>(count * 10L, TotalHitsRelation.EQUAL_TO, 1.0f, Duration.ofMillis(3), null, null,
+                hits, null, null, null);
+    }
+
+    /**
+     * Writes a JSON array of {@code count} courses in the sample-courses.json layout.
+     */
+    static void writeCatalog(OutputStream out, int count, ObjectMapper objectMapper) throws IOException {
+        SplittableRandom random = new SplittableRandom(42);
+        Instant base = Instant.parse("2025-07-01T10:00:00Z");
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            generator.writeStartArray();
+            for (int i = 0; i < count; i++) {
+                int minAge = 6 + random.nextInt(10);
+                generator.writeStartObject();
+                generator.writeStringField("id", "course_" + i);
+                generator.writeStringField("title", "Introduction to Topic " + i);
+                generator.writeStringField("description", "Learn the basics of topic " + i + " with hands-on projects.");
+                generator.writeStringField("category", CATEGORIES[random.nextInt(CATEGORIES.length)]);
+                generator.writeStringField("type", TYPES[random.nextInt(TYPES.length)]);
+                generator.writeStringField("gradeRange", "6th-8th");
+                generator.writeNumberField("minAge", minAge);
+                generator.writeNumberField("maxAge", minAge + 3);
+                generator.writeNumberField("price", 10 + random.nextInt(9000) / 100.0);
+                generator.writeNumberField("popularity", 1 + (i * 7919L) % 1000);
+                generator.writeStringField("nextSessionDate", base.plus(Duration.ofHours(random.nextInt(24 * 365))).toString());
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+        }
+    }
+}
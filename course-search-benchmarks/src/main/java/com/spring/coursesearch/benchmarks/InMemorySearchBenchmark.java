@@ -0,0 +1,76 @@
+package com.spring.coursesearch.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.spring.coursesearch.entity.CourseDocument;
+import com.spring.coursesearch.entity.CourseSummaryProjection;
+import com.spring.coursesearch.services.DataLoaderService;
+import com.spring.coursesearch.services.InMemoryCourseIndex;
+import com.spring.coursesearch.services.SearchParameters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.elasticsearch.core.SearchHits;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of the in-memory fallback index per search shape and catalog size.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+@State(Scope.Benchmark)
+public class InMemorySearchBenchmark {
+
+    @Param({"10000", "100000"})
+    public int courses;
+
+    @Param({"filters", "text", "facets"})
+    public String shape;
+
+    private InMemoryCourseIndex index;
+    private SearchParameters parameters;
+
+    @Setup
+    public void setup() throws IOException {
+        ObjectMapper objectMapper = new ObjectMapper();
+        ByteArrayOutputStream catalog = new ByteArrayOutputStream();
+        Fixtures.writeCatalog(catalog, courses, objectMapper);
+
+        InMemoryCourseIndex.Builder builder = InMemoryCourseIndex.builder();
+        for (CourseDocument course : objectMapper.readValue(catalog.toByteArray(), CourseDocument[].class)) {
+            course.setSuggest(DataLoaderService.titleSuggestion(course.getTitle()));
+            builder.add(course);
+        }
+        index = builder.build();
+
+        parameters = switch (shape) {
+            case "text" -> SearchParameters.of("topik 42", null, null, null, null, null, null, null, null, 0, 10);
+            case "facets" -> SearchParameters.of(null, 10, 14, "Math", null, null, null, null, null, 0, 10, true);
+            default -> SearchParameters.of(null, 10, 14, "Math", "COURSE", 20.0, 80.0, null, "priceAsc", 0, 10);
+        };
+    }
+
+    @Benchmark
+    public SearchHits<CourseSummaryProjection> search() {
+        return index.search(parameters);
+    }
+
+    @Benchmark
+    public List<String> suggest() {
+        return index.suggest("introduction to topic 12", 10);
+    }
+}
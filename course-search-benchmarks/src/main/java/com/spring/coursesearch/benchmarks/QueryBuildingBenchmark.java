@@ -0,0 +1,72 @@
+package com.spring.coursesearch.benchmarks;
+
+import co.elastic.clients.json.JsonpUtils;
+import co.elastic.clients.json.jackson.JacksonJsonpMapper;
+import com.spring.coursesearch.services.CourseSearchService;
+import com.spring.coursesearch.services.InMemorySearchBackend;
+import com.spring.coursesearch.services.SearchParameters;
+import com.spring.coursesearch.services.SearchResultCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.elasticsearch.client.elc.NativeQuery;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of turning /api/search parameters into an Elasticsearch query, per parameter shape.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class QueryBuildingBenchmark {
+
+    @Param({"empty", "text", "filters", "full"})
+    public String shape;
+
+    private CourseSearchService searchService;
+    private SearchParameters parameters;
+    private final JacksonJsonpMapper jsonpMapper = new JacksonJsonpMapper();
+
+    @Setup
+    public void setup() {
+        searchService = new CourseSearchService(StubElasticsearchOperations.returning(Fixtures.searchHits(10)),
+                new SearchResultCache(false, 1, Duration.ofSeconds(1), Duration.ofSeconds(1)), Fixtures.metrics(),
+                new InMemorySearchBackend("elasticsearch", false), Fixtures.guard(),
+                Fixtures.indexManager());
+        parameters = switch (shape) {
+            case "text" -> SearchParameters.of("algebra", null, null, null, null, null, null, null, null, 0, 10);
+            case "filters" -> SearchParameters.of(null, 10, 14, "Math", "COURSE", 20.0, 80.0, null, "priceAsc", 0, 10);
+            case "full" -> SearchParameters.of("algebra", 10, 14, "Math", "COURSE", 20.0, 80.0,
+                    "2025-07-01T00:00:00Z", "priceDesc", 2, 10);
+            default -> SearchParameters.of(null, null, null, null, null, null, null, null, null, 0, 10);
+        };
+    }
+
+    @Benchmark
+    public SearchParameters canonicalizeParameters() {
+        return SearchParameters.of("algebra", 10, 14, "Math", "COURSE", 20.0, 80.0, null, "priceasc", 0, 10);
+    }
+
+    @Benchmark
+    public NativeQuery buildQuery() {
+        return searchService.buildSearchQuery(parameters);
+    }
+
+    @Benchmark
+    public String buildAndSerializeQuery() {
+        return JsonpUtils.toJsonString(searchService.buildSearchQuery(parameters).getQuery(), jsonpMapper);
+    }
+}
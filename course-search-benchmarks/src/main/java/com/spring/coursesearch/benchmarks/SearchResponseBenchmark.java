@@ -0,0 +1,86 @@
+package com.spring.coursesearch.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import com.spring.coursesearch.controller.CourseSearchController;
+import com.spring.coursesearch.services.CourseSearchService;
+import com.spring.coursesearch.services.InMemorySearchBackend;
+import com.spring.coursesearch.services.SearchResultCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The per-request work after Elasticsearch answers: SearchHits to SearchResponse, then JSON, CBOR or Smile.
+ * Run with {@code -prof gc} to see the allocation budget per request.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SearchResponseBenchmark {
+
+    @Param({"10", "100"})
+    public int hits;
+
+    private CourseSearchController controller;
+    private CourseSearchController.SearchResponse response;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ObjectMapper cborMapper = new CBORMapper();
+    private final ObjectMapper smileMapper = new SmileMapper();
+
+    @Setup
+    public void setup() {
+        // Result cache disabled so every call goes through the stubbed backend and the full mapping path
+        CourseSearchService searchService = new CourseSearchService(
+                StubElasticsearchOperations.returning(Fixtures.searchHits(hits)),
+                new SearchResultCache(false, 1, Duration.ofSeconds(1), Duration.ofSeconds(1)), Fixtures.metrics(),
+                new InMemorySearchBackend("elasticsearch", false), Fixtures.guard(),
+                Fixtures.indexManager());
+        controller = new CourseSearchController(searchService, null, objectMapper, Fixtures.metrics());
+        response = search();
+    }
+
+    @Benchmark
+    public CourseSearchController.SearchResponse mapHits() {
+        return search();
+    }
+
+    @Benchmark
+    public byte[] serializeResponse() throws Exception {
+        return objectMapper.writeValueAsBytes(response);
+    }
+
+    @Benchmark
+    public byte[] serializeCbor() throws Exception {
+        return cborMapper.writeValueAsBytes(response);
+    }
+
+    @Benchmark
+    public byte[] serializeSmile() throws Exception {
+        return smileMapper.writeValueAsBytes(response);
+    }
+
+    @Benchmark
+    public byte[] mapAndSerialize() throws Exception {
+        return objectMapper.writeValueAsBytes(search());
+    }
+
+    private CourseSearchController.SearchResponse search() {
+        return controller.search(null, 10, 14, "Math", null, null, null, null, "priceAsc", 0, hits, null, false, false);
+    }
+}
@@ -0,0 +1,33 @@
+package com.spring.coursesearch.benchmarks;
+
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.SearchHits;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+
+import java.lang.reflect.Proxy;
+import java.util.List;
+
+/**
+ * {@link ElasticsearchOperations} stand-in that answers every search with a canned result and accepts
+ * every bulk request without doing I/O, so benchmarks measure only the application's own work.
+ */
+final class StubElasticsearchOperations {
+
+    private StubElasticsearchOperations() {
+    }
+
+    static ElasticsearchOperations returning(SearchHits<?> searchHits) {
+        return (ElasticsearchOperations) Proxy.newProxyInstance(
+                StubElasticsearchOperations.class.getClassLoader(),
+                new Class<?>[]{ElasticsearchOperations.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "search" -> searchHits;
+                    case "bulkIndex" -> List.of();
+                    case "getIndexCoordinatesFor" -> IndexCoordinates.of("courses");
+                    case "toString" -> "StubElasticsearchOperations";
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+}
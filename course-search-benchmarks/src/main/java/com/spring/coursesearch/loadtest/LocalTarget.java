@@ -0,0 +1,99 @@
+package com.spring.coursesearch.loadtest;
+
+import com.spring.coursesearch.CourseSearchApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.testcontainers.containers.wait.strategy.Wait;
+import org.testcontainers.elasticsearch.ElasticsearchContainer;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Runs course-search inside the driver's JVM on a random port, loaded with a catalog file, either on the in-memory
+ * backend or against a single-node Elasticsearch started with Testcontainers. Driver and application then share
+ * the machine's CPUs, which is fine for comparing configurations but understates the absolute capacity of a
+ * dedicated host.
+ */
+public final class LocalTarget implements AutoCloseable {
+
+    public static final String ELASTICSEARCH_IMAGE = "docker.elastic.co/elasticsearch/elasticsearch:8.15.0";
+
+    private final ElasticsearchContainer elasticsearch;
+    private final ConfigurableApplicationContext context;
+
+    private LocalTarget(ElasticsearchContainer elasticsearch, ConfigurableApplicationContext context) {
+        this.elasticsearch = elasticsearch;
+        this.context = context;
+    }
+
+    /**
+     * Serves the catalog from the in-memory backend only; no Docker needed.
+     */
+    public static LocalTarget memory(Path catalog, Map<String, String> properties) {
+        Map<String, String> settings = settings(catalog);
+        settings.put("course-search.search.backend", "memory");
+        settings.putAll(properties);
+        return new LocalTarget(null, start(settings));
+    }
+
+    /**
+     * Starts Elasticsearch in Docker, loads the catalog into it and serves searches from Elasticsearch only.
+     */
+    public static LocalTarget elasticsearch(Path catalog, String image, String heap, Map<String, String> properties) {
+        ElasticsearchContainer container = new ElasticsearchContainer(image)
+                .withEnv("discovery.type", "single-node")
+                .withEnv("xpack.security.enabled", "false")
+                .withEnv("xpack.ml.enabled", "false")
+                .withEnv("ES_JAVA_OPTS", "-Xms" + heap + " -Xmx" + heap)
+                .waitingFor(Wait.forHttp("/_cluster/health?wait_for_status=yellow&timeout=60s")
+                        .forPort(9200)
+                        .withStartupTimeout(Duration.ofMinutes(5)));
+        container.start();
+        try {
+            Map<String, String> settings = settings(catalog);
+            settings.put("spring.elasticsearch.uris", "http://" + container.getHttpHostAddress());
+            settings.put("spring.elasticsearch.socket-timeout", "60s");
+            settings.put("course-search.search.backend", "elasticsearch");
+            settings.put("course-search.search.memory-index.enabled", "false");
+            settings.putAll(properties);
+            return new LocalTarget(container, start(settings));
+        } catch (RuntimeException e) {
+            container.stop();
+            throw e;
+        }
+    }
+
+    private static Map<String, String> settings(Path catalog) {
+        Map<String, String> settings = new HashMap<>();
+        settings.put("server.port", "0");
+        settings.put("course-search.ingest.catalog", catalog.toUri().toString());
+        settings.put("course-search.index.mode", "reindex");
+        settings.put("spring.devtools.restart.enabled", "false");
+        return settings;
+    }
+
+    // Passed as command-line arguments, which take precedence over application.yml.
+    // The catalog is loaded on ApplicationReadyEvent, so the application is fully loaded once run returns
+    private static ConfigurableApplicationContext start(Map<String, String> settings) {
+        String[] args = settings.entrySet().stream()
+                .map(setting -> "--" + setting.getKey() + "=" + setting.getValue())
+                .toArray(String[]::new);
+        return new SpringApplicationBuilder(CourseSearchApplication.class).run(args);
+    }
+
+    public String baseUrl() {
+        return "http://localhost:" + ((WebServerApplicationContext) context).getWebServer().getPort();
+    }
+
+    @Override
+    public void close() {
+        context.close();
+        if (elasticsearch != null) {
+            elasticsearch.stop();
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.spring.coursesearch.loadtest;
+
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The requests a load run sends, as paths relative to the base URL. Each path is grouped by its endpoint
+ * (the part before {@code ?}) so latencies can be reported per endpoint.
+ * <ul>
+ *     <li>{@link #recorded(Path)} replays a file of paths in order, e.g. taken from an access log</li>
+ *     <li>{@link #parameterized} draws from a pool of generated searches and suggestions with a Zipf popularity,
+ *     so a few queries repeat often and the long tail rarely does, like real traffic</li>
+ * </ul>
+ */
+public final class QueryMix {
+
+    public static final String SEARCH = "/api/search";
+    public static final String SUGGEST = "/api/search/suggest";
+
+    private static final String[] SORTS = {"upcoming", "upcoming", "relevance", "priceAsc", "priceDesc", "title"};
+
+    private final String[] paths;
+    private final int[] endpoints;
+    private final List<String> endpointNames;
+    // Cumulative draw probabilities; null replays the paths in order
+    private final double[] cumulative;
+    private final AtomicLong cursor = new AtomicLong();
+
+    private QueryMix(List<String> paths, double[] cumulative) {
+        if (paths.isEmpty()) {
+            throw new IllegalArgumentException("The query mix is empty");
+        }
+        this.paths = paths.toArray(String[]::new);
+        this.endpoints = new int[this.paths.length];
+        this.cumulative = cumulative;
+        Map<String, Integer> names = new LinkedHashMap<>();
+        for (int i = 0; i < this.paths.length; i++) {
+            int query = this.paths[i].indexOf('?');
+            String endpoint = query >= 0 ? this.paths[i].substring(0, query) : this.paths[i];
+            endpoints[i] = names.computeIfAbsent(endpoint, e -> names.size());
+        }
+        this.endpointNames = List.copyOf(names.keySet());
+    }
+
+    /**
+     * Sends every path equally often.
+     */
+    public static QueryMix uniform(List<String> paths) {
+        double[] cumulative = new double[paths.size()];
+        for (int i = 0; i < cumulative.length; i++) {
+            cumulative[i] = (i + 1.0) / cumulative.length;
+        }
+        return new QueryMix(paths, cumulative);
+    }
+
+    /**
+     * Replays one path per line, in file order and wrapping around; blank lines and lines starting with {@code #}
+     * are skipped. Concurrent clients share the position, so the recorded frequencies are kept.
+     */
+    public static QueryMix recorded(Path file) throws IOException {
+        List<String> paths = Files.readAllLines(file).stream()
+                .map(String::trim)
+                .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                .toList();
+        return new QueryMix(paths, null);
+    }
+
+    /**
+     * Builds {@code distinct} requests over the {@link SyntheticCatalog} vocabulary, {@code suggestRatio} of them
+     * suggestions. Searches are a mix of keyword, keyword plus filters, and filter-only browsing with the various
+     * sorts and the occasional deeper page. Requests are drawn with probability proportional to 1 / rank.
+     */
+    public static QueryMix parameterized(long seed, int distinct, double suggestRatio) {
+        SplittableRandom random = new SplittableRandom(seed);
+        List<String> paths = new ArrayList<>(distinct);
+        for (int i = 0; i < distinct; i++) {
+            paths.add(random.nextDouble() < suggestRatio ? suggestion(random) : search(random));
+        }
+
+        double[] cumulative = new double[distinct];
+        double total = 0;
+        for (int i = 0; i < distinct; i++) {
+            total += 1.0 / (i + 1);
+            cumulative[i] = total;
+        }
+        for (int i = 0; i < distinct; i++) {
+            cumulative[i] /= total;
+        }
+        return new QueryMix(paths, cumulative);
+    }
+
+    private static String search(SplittableRandom random) {
+        int category = random.nextInt(SyntheticCatalog.CATEGORIES.length);
+        String[] subjects = SyntheticCatalog.SUBJECTS[category];
+        StringBuilder query = new StringBuilder(SEARCH).append("?");
+        double shape = random.nextDouble();
+        if (shape < 0.6) {
+            // Keyword search, sometimes on a multi-word subject or with a level
+            String keyword = subjects[SyntheticCatalog.zipf(random, subjects.length)];
+            if (random.nextInt(4) == 0) {
+                keyword = SyntheticCatalog.LEVELS[random.nextInt(SyntheticCatalog.LEVELS.length)] + " " + keyword;
+            }
+            parameter(query, "q", keyword.toLowerCase());
+        }
+        if (shape >= 0.4 && shape < 0.9 || random.nextInt(5) == 0) {
+            parameter(query, "category", SyntheticCatalog.CATEGORIES[category]);
+        }
+        if (random.nextInt(3) == 0) {
+            int minAge = 8 + random.nextInt(9);
+            parameter(query, "minAge", String.valueOf(minAge));
+            parameter(query, "maxAge", String.valueOf(minAge + 3));
+        }
+        if (random.nextInt(5) == 0) {
+            parameter(query, "type", SyntheticCatalog.TYPES[random.nextInt(SyntheticCatalog.TYPES.length)]);
+        }
+        if (shape >= 0.9 || random.nextInt(6) == 0) {
+            int minPrice = 10 * random.nextInt(8);
+            parameter(query, "minPrice", String.valueOf(minPrice));
+            parameter(query, "maxPrice", String.valueOf(minPrice + 25 + 25 * random.nextInt(4)));
+        }
+        parameter(query, "sort", SORTS[random.nextInt(SORTS.length)]);
+        // Most users stay on the first page
+        int page = 0;
+        while (page < 20 && random.nextInt(4) == 0) {
+            page++;
+        }
+        if (page > 0) {
+            parameter(query, "page", String.valueOf(page));
+        }
+        return query.substring(0, query.length() - 1);
+    }
+
+    // What a user has typed so far: one to eight characters of a title
+    private static String suggestion(SplittableRandom random) {
+        int category = random.nextInt(SyntheticCatalog.CATEGORIES.length);
+        String[] subjects = SyntheticCatalog.SUBJECTS[category];
+        String title = random.nextInt(3) == 0
+                ? SyntheticCatalog.LEVELS[SyntheticCatalog.zipf(random, SyntheticCatalog.LEVELS.length)]
+                : subjects[SyntheticCatalog.zipf(random, subjects.length)];
+        String typed = title.substring(0, Math.min(title.length(), 1 + random.nextInt(8))).toLowerCase();
+        return SUGGEST + "?q=" + URLEncoder.encode(typed, StandardCharsets.UTF_8);
+    }
+
+    private static void parameter(StringBuilder query, String name, String value) {
+        query.append(name).append('=').append(URLEncoder.encode(value, StandardCharsets.UTF_8)).append('&');
+    }
+
+    /**
+     * Index of the next request to send, see {@link #path(int)} and {@link #endpoint(int)}.
+     */
+    public int next() {
+        if (cumulative == null) {
+            return (int) (cursor.getAndIncrement() % paths.length);
+        }
+        int i = Arrays.binarySearch(cumulative, ThreadLocalRandom.current().nextDouble());
+        return Math.min(i >= 0 ? i : -i - 1, paths.length - 1);
+    }
+
+    public String path(int request) {
+        return paths[request];
+    }
+
+    public int endpoint(int request) {
+        return endpoints[request];
+    }
+
+    public List<String> endpoints() {
+        return endpointNames;
+    }
+
+    public int size() {
+        return paths.length;
+    }
+
+    /**
+     * Writes {@code count} draws, one path per line, so the same traffic can later be replayed with {@link #recorded}.
+     */
+    public void write(Path file, int count) throws IOException {
+        List<String> lines = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            lines.add(paths[next()]);
+        }
+        Files.write(file, lines);
+    }
+}
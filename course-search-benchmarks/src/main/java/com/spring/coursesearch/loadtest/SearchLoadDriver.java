@@ -0,0 +1,276 @@
+package com.spring.coursesearch.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * Closed-loop HTTP load driver for course-search. Each simulated client is a virtual thread
+ * that sends the next request as soon as the previous one completes, so the driver itself never runs out of threads.
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar com.spring.coursesearch.loadtest.SearchLoadDriver \
+ *     --url=http://localhost:8080 --clients=400 --duration=60s --path=/api/search?category=Math
+ * </pre>
+ * Compare sustained throughput at equal p99 by running the application once with
+ * {@code --spring.threads.virtual.enabled=true} and once with the default platform threads.
+ * <p>
+ * Without {@code --url} the driver starts the application itself ({@code --target=memory} or
+ * {@code --target=elasticsearch}, see {@link LocalTarget}) on a generated or given catalog. Without {@code --path}
+ * it sends a {@link QueryMix#parameterized parameterized} mix, or replays {@code --mix=<file>}.
+ */
+public final class SearchLoadDriver {
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private SearchLoadDriver() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parse(args);
+        int clients = Integer.parseInt(options.getOrDefault("clients", "200"));
+        Duration duration = Duration.parse("PT" + options.getOrDefault("duration", "30s").toUpperCase());
+        Duration warmup = Duration.parse("PT" + options.getOrDefault("warmup", "5s").toUpperCase());
+        long seed = Long.parseLong(options.getOrDefault("seed", "42"));
+
+        QueryMix mix;
+        if (options.containsKey("path")) {
+            mix = QueryMix.uniform(Arrays.asList(options.get("path").split(",")));
+        } else if (options.containsKey("mix")) {
+            mix = QueryMix.recorded(Path.of(options.get("mix")));
+        } else {
+            mix = QueryMix.parameterized(seed, Integer.parseInt(options.getOrDefault("queries", "10000")),
+                    Double.parseDouble(options.getOrDefault("suggest-ratio", "0.3")));
+        }
+        if (options.containsKey("save-mix")) {
+            mix.write(Path.of(options.get("save-mix")), Integer.parseInt(options.getOrDefault("save-count", "100000")));
+            System.out.println("Saved the query mix to " + options.get("save-mix"));
+            return;
+        }
+
+        if (options.containsKey("url")) {
+            System.out.println(run(options.get("url"), mix, clients, warmup, duration).format());
+            return;
+        }
+
+        // Generate a catalog unless one is given; it is regenerated identically for the same seed and day
+        Path catalog = options.containsKey("catalog") ? Path.of(options.get("catalog")) : null;
+        if (catalog == null) {
+            catalog = Files.createTempFile("catalog-", ".json");
+            catalog.toFile().deleteOnExit();
+            int courses = Integer.parseInt(options.getOrDefault("courses", "100000"));
+            SyntheticCatalog.write(catalog, courses, seed, Instant.now());
+            System.out.printf("Generated %d courses (%d MB)%n", courses, Files.size(catalog) >> 20);
+        }
+
+        // Options with a dot, e.g. --course-search.search.cache.enabled=false, configure the application
+        Map<String, String> properties = new HashMap<>();
+        options.forEach((name, value) -> {
+            if (name.contains(".")) {
+                properties.put(name, value);
+            }
+        });
+        String target = options.getOrDefault("target", "memory");
+        try (LocalTarget local = switch (target) {
+            case "memory" -> LocalTarget.memory(catalog, properties);
+            case "elasticsearch" -> LocalTarget.elasticsearch(catalog,
+                    options.getOrDefault("image", LocalTarget.ELASTICSEARCH_IMAGE),
+                    options.getOrDefault("es-heap", "1g"), properties);
+            default -> throw new IllegalArgumentException("Unknown target '" + target + "'");
+        }) {
+            System.out.println(run(local.baseUrl(), mix, clients, warmup, duration).format());
+        }
+    }
+
+    /**
+     * Drives {@code clients} concurrent clients against {@code paths}, discarding samples taken during warmup.
+     */
+    public static LoadReport run(String baseUrl, List<String> paths, int clients, Duration warmup, Duration duration)
+            throws InterruptedException {
+        return run(baseUrl, QueryMix.uniform(paths), clients, warmup, duration);
+    }
+
+    /**
+     * Drives {@code clients} concurrent clients with requests drawn from {@code mix}, discarding samples taken during
+     * warmup. The application's allocation rate over the measured interval is read from its
+     * {@code jvm.gc.memory.allocated} metric, which advances at each young collection, so short runs under-report it.
+     */
+    public static LoadReport run(String baseUrl, QueryMix mix, int clients, Duration warmup, Duration duration)
+            throws InterruptedException {
+        HttpClient http = HttpClient.newBuilder()
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        URI[] uris = new URI[mix.size()];
+        for (int i = 0; i < uris.length; i++) {
+            uris[i] = URI.create(baseUrl + mix.path(i));
+        }
+        int endpoints = mix.endpoints().size();
+
+        long measureFrom = System.nanoTime() + warmup.toNanos();
+        long stopAt = measureFrom + duration.toNanos();
+        AtomicLong[] errors = new AtomicLong[endpoints];
+        Arrays.setAll(errors, e -> new AtomicLong());
+        List<Samples> samples = new ArrayList<>();
+        long allocatedBefore;
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int c = 0; c < clients; c++) {
+                Samples client = new Samples(endpoints);
+                samples.add(client);
+                executor.execute(() -> {
+                    while (System.nanoTime() < stopAt) {
+                        int request = mix.next();
+                        int endpoint = mix.endpoint(request);
+                        long start = System.nanoTime();
+                        boolean failed;
+                        try {
+                            HttpResponse<Void> response = http.send(HttpRequest.newBuilder(uris[request]).GET().build(),
+                                    HttpResponse.BodyHandlers.discarding());
+                            failed = response.statusCode() >= 400;
+                        } catch (Exception e) {
+                            failed = true;
+                        }
+                        long end = System.nanoTime();
+                        if (start >= measureFrom && end <= stopAt) {
+                            if (failed) {
+                                errors[endpoint].incrementAndGet();
+                            }
+                            client.add(endpoint, end - start);
+                        }
+                    }
+                });
+            }
+            Thread.sleep(Math.max(0, (measureFrom - System.nanoTime()) / 1_000_000));
+            allocatedBefore = allocatedBytes(http, baseUrl);
+        }
+        long allocatedAfter = allocatedBytes(http, baseUrl);
+        double allocationRate = allocatedBefore < 0 || allocatedAfter < 0 ? -1
+                : (allocatedAfter - allocatedBefore) / (duration.toNanos() / 1e9);
+
+        List<LoadResult> results = new ArrayList<>();
+        for (int e = 0; e < endpoints; e++) {
+            int endpoint = e;
+            long[] all = Samples.merge(samples, s -> s.latencies[endpoint], s -> s.counts[endpoint]);
+            results.add(new LoadResult(mix.endpoints().get(e), all.length, errors[e].get(), duration, all));
+        }
+        if (endpoints > 1) {
+            long[] all = Samples.merge(results, LoadResult::sortedLatencies, r -> r.sortedLatencies().length);
+            results.add(new LoadResult("total", all.length, Arrays.stream(errors).mapToLong(AtomicLong::get).sum(),
+                    duration, all));
+        }
+        return new LoadReport(results, allocationRate);
+    }
+
+    // Total bytes allocated by the application, or -1 if its metrics endpoint is not reachable
+    private static long allocatedBytes(HttpClient http, String baseUrl) {
+        try {
+            HttpResponse<String> response = http.send(HttpRequest.newBuilder(
+                            URI.create(baseUrl + "/actuator/metrics/jvm.gc.memory.allocated")).GET().build(),
+                    HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 200) {
+                return -1;
+            }
+            JsonNode measurements = JSON.readTree(response.body()).path("measurements");
+            return measurements.isArray() && !measurements.isEmpty() ? measurements.get(0).path("value").asLong(-1) : -1;
+        } catch (IOException e) {
+            return -1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return -1;
+        }
+    }
+
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (arg.startsWith("--") && arg.contains("=")) {
+                options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+            }
+        }
+        return options;
+    }
+
+    // Per-client latency buffers, one per endpoint, only touched by the client's own thread
+    private static final class Samples {
+        private final long[][] latencies;
+        private final int[] counts;
+
+        private Samples(int endpoints) {
+            latencies = new long[endpoints][1 << 12];
+            counts = new int[endpoints];
+        }
+
+        private void add(int endpoint, long nanos) {
+            if (counts[endpoint] == latencies[endpoint].length) {
+                latencies[endpoint] = Arrays.copyOf(latencies[endpoint], latencies[endpoint].length * 2);
+            }
+            latencies[endpoint][counts[endpoint]++] = nanos;
+        }
+
+        private static <T> long[] merge(List<T> parts, Function<T, long[]> values, ToIntFunction<T> counts) {
+            long[] all = new long[parts.stream().mapToInt(counts).sum()];
+            int offset = 0;
+            for (T part : parts) {
+                int count = counts.applyAsInt(part);
+                System.arraycopy(values.apply(part), 0, all, offset, count);
+                offset += count;
+            }
+            Arrays.sort(all);
+            return all;
+        }
+    }
+
+    public record LoadReport(List<LoadResult> results, double allocatedBytesPerSecond) {
+
+        public String format() {
+            StringBuilder report = new StringBuilder();
+            for (LoadResult result : results) {
+                report.append(result.format()).append('\n');
+            }
+            report.append(allocatedBytesPerSecond < 0 ? "allocation=n/a (actuator metrics not reachable)"
+                    : String.format("allocation=%.1f MB/s", allocatedBytesPerSecond / (1 << 20)));
+            return report.toString();
+        }
+    }
+
+    public record LoadResult(String endpoint, long requests, long errors, Duration duration, long[] sortedLatencies) {
+
+        public double throughput() {
+            return requests / (duration.toNanos() / 1e9);
+        }
+
+        public double percentileMillis(double percentile) {
+            if (sortedLatencies.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(percentile / 100.0 * sortedLatencies.length) - 1;
+            return sortedLatencies[Math.max(0, Math.min(index, sortedLatencies.length - 1))] / 1e6;
+        }
+
+        public String format() {
+            return String.format("%-20s requests=%d errors=%d throughput=%.1f req/s p50=%.2f ms p99=%.2f ms p999=%.2f ms",
+                    endpoint, requests, errors, throughput(), percentileMillis(50), percentileMillis(99),
+                    percentileMillis(99.9));
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.spring.coursesearch.loadtest;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Generates large catalogs in the sample-courses.json layout with skewed, production-like distributions:
+ * a few categories and subjects hold most courses, prices are log-normal, popularity follows a power law
+ * and most sessions start within the next few weeks.
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar com.spring.coursesearch.loadtest.SyntheticCatalog --courses=1000000 --out=catalog.json
+ * </pre>
+ * The output is read with {@code --course-search.ingest.catalog=file:catalog.json}.
+ */
+public final class SyntheticCatalog {
+
+    static final String[] CATEGORIES = {"Science", "Math", "Technology", "Music", "Art", "History", "English"};
+    private static final double[] CATEGORY_WEIGHTS = {0.20, 0.18, 0.16, 0.14, 0.13, 0.11, 0.08};
+
+    // Subjects per category, most common first; picks are Zipf-distributed over each list
+    static final String[][] SUBJECTS = {
+            {"Biology", "Chemistry", "Physics", "Astronomy", "Dinosaurs", "Environmental Science", "Geology",
+                    "Marine Biology", "Anatomy", "Ecology"},
+            {"Algebra", "Geometry", "Fractions", "Statistics", "Calculus", "Trigonometry", "Probability",
+                    "Number Theory", "Mental Math", "Logic Puzzles"},
+            {"Coding", "Robotics", "Web Development", "Game Development", "Python", "Electronics", "3D Printing",
+                    "Cybersecurity", "App Design", "Artificial Intelligence"},
+            {"Piano", "Guitar", "Violin", "Drums", "Singing", "Music Theory", "Ukulele", "Songwriting", "Choir",
+                    "Music Production"},
+            {"Drawing", "Watercolor Painting", "Sculpture", "Oil Painting", "Photography", "Pottery", "Animation",
+                    "Comics", "Digital Art", "Printmaking"},
+            {"Ancient Civilizations", "World War II", "American Revolution", "Medieval History", "Ancient Egypt",
+                    "Local History", "Renaissance", "Civil Rights", "Exploration", "Mythology"},
+            {"Creative Writing", "Poetry", "Essay Writing", "Public Speaking", "Grammar", "Reading Comprehension",
+                    "Debate", "Storytelling", "Journalism", "Literature"}};
+
+    static final String[] LEVELS = {"Introduction to", "Beginner", "Fun with", "Exploring", "Hands-on", "Intermediate",
+            "Advanced", "Mastering"};
+    private static final String[] FORMATS = {"", "", "", "Workshop", "Club", "Lab", "Camp", "Bootcamp", "Masterclass"};
+    private static final String[] ACTIVITIES = {"hands-on projects", "guided practice", "group games",
+            "real-world examples", "weekly challenges", "experiments", "short lessons", "team projects"};
+
+    static final String[] TYPES = {"COURSE", "CLUB", "ONE_TIME"};
+    private static final double[] TYPE_WEIGHTS = {0.45, 0.35, 0.20};
+
+    private static final String[] ORDINALS = {"th", "st", "nd", "rd", "th", "th", "th", "th", "th", "th"};
+
+    private SyntheticCatalog() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (arg.startsWith("--") && arg.contains("=")) {
+                options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+            }
+        }
+        int courses = Integer.parseInt(options.getOrDefault("courses", "100000"));
+        long seed = Long.parseLong(options.getOrDefault("seed", "42"));
+        Path out = Path.of(options.getOrDefault("out", "catalog.json"));
+
+        long start = System.nanoTime();
+        write(out, courses, seed, Instant.now());
+        System.out.printf("Wrote %d courses to %s (%d MB) in %d ms%n", courses, out, Files.size(out) >> 20,
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    public static void write(Path out, int courses, long seed, Instant now) throws IOException {
+        try (OutputStream stream = new BufferedOutputStream(Files.newOutputStream(out), 1 << 16)) {
+            write(stream, courses, seed, now);
+        }
+    }
+
+    /**
+     * Writes a JSON array of {@code courses} courses. The same seed and {@code now} always produce the same catalog;
+     * session dates are spread over the year after {@code now}.
+     */
+    public static void write(OutputStream out, int courses, long seed, Instant now) throws IOException {
+        SplittableRandom random = new SplittableRandom(seed);
+        Instant base = now.truncatedTo(ChronoUnit.DAYS);
+        try (JsonGenerator generator = new JsonFactory().createGenerator(out, JsonEncoding.UTF8)) {
+            generator.writeStartArray();
+            for (int i = 0; i < courses; i++) {
+                int category = pick(random, CATEGORY_WEIGHTS);
+                String subject = SUBJECTS[category][zipf(random, SUBJECTS[category].length)];
+                String format = FORMATS[random.nextInt(FORMATS.length)];
+                String title = LEVELS[zipf(random, LEVELS.length)] + " " + subject + (format.isEmpty() ? "" : " " + format);
+                int minAge = 8 + random.nextInt(9);
+                int maxAge = Math.min(18, minAge + 2 + random.nextInt(3));
+
+                generator.writeStartObject();
+                generator.writeStringField("id", "course_" + i);
+                generator.writeStringField("title", title);
+                generator.writeStringField("description", "Learn " + subject.toLowerCase() + " through "
+                        + ACTIVITIES[random.nextInt(ACTIVITIES.length)] + " and "
+                        + ACTIVITIES[random.nextInt(ACTIVITIES.length)] + ".");
+                generator.writeStringField("category", CATEGORIES[category]);
+                generator.writeStringField("type", TYPES[pick(random, TYPE_WEIGHTS)]);
+                generator.writeStringField("gradeRange", grade(minAge - 5) + "-" + grade(Math.min(12, maxAge - 5)));
+                generator.writeNumberField("minAge", minAge);
+                generator.writeNumberField("maxAge", maxAge);
+                generator.writeNumberField("price", price(random));
+                // New courses have no popularity signal yet
+                if (random.nextDouble() >= 0.05) {
+                    generator.writeNumberField("popularity", popularity(random));
+                }
+                // A few courses have no upcoming session; most of the rest start within the next weeks
+                if (random.nextDouble() >= 0.03) {
+                    generator.writeStringField("nextSessionDate", sessionDate(random, base).toString());
+                }
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+        }
+    }
+
+    // Log-normal around $50, whole dollars or .99
+    private static double price(SplittableRandom random) {
+        double gaussian = Math.sqrt(-2 * Math.log(1 - random.nextDouble())) * Math.cos(2 * Math.PI * random.nextDouble());
+        long dollars = Math.max(10, Math.min(500, Math.round(50 * Math.exp(0.4 * gaussian))));
+        return random.nextInt(5) == 0 ? dollars - 0.01 : dollars;
+    }
+
+    // Pareto with a long tail: most courses have a few dozen enrollments, a handful have thousands
+    private static long popularity(SplittableRandom random) {
+        return Math.min(100_000, (long) (10 / Math.pow(1 - random.nextDouble(), 1 / 1.2)));
+    }
+
+    private static Instant sessionDate(SplittableRandom random, Instant base) {
+        long days = random.nextDouble() < 0.75
+                ? Math.min(364, (long) (-30 * Math.log(1 - random.nextDouble())))
+                : random.nextLong(365);
+        return base.plus(Duration.ofDays(days)).plus(Duration.ofHours(9 + random.nextInt(10)));
+    }
+
+    private static String grade(int grade) {
+        return grade <= 0 ? "K" : grade + ORDINALS[grade % 100 / 10 == 1 ? 0 : grade % 10];
+    }
+
+    private static int pick(SplittableRandom random, double[] weights) {
+        double value = random.nextDouble();
+        for (int i = 0; i < weights.length - 1; i++) {
+            value -= weights[i];
+            if (value < 0) {
+                return i;
+            }
+        }
+        return weights.length - 1;
+    }
+
+    // Index in [0, n) with probability proportional to 1 / (index + 1)
+    static int zipf(SplittableRandom random, int n) {
+        double harmonic = 0;
+        for (int i = 1; i <= n; i++) {
+            harmonic += 1.0 / i;
+        }
+        double value = random.nextDouble() * harmonic;
+        for (int i = 0; i < n - 1; i++) {
+            value -= 1.0 / (i + 1);
+            if (value < 0) {
+                return i;
+            }
+        }
+        return n - 1;
+    }
+}
@@ -0,0 +1,33 @@
+package com.spring.coursesearch.config;
+
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.elasticsearch.client.RestClientBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.elasticsearch.RestClientBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Sizes the Elasticsearch client's connection pool for the web tier. The client defaults to 10 connections per node,
+ * which becomes the real concurrency limit once requests run on virtual threads instead of a bounded Tomcat pool.
+ */
+@Configuration
+public class ElasticsearchClientConfig {
+
+    @Bean
+    public RestClientBuilderCustomizer connectionPoolCustomizer(
+            @Value("${course-search.elasticsearch.max-connections:200}") int maxConnections,
+            @Value("${course-search.elasticsearch.max-connections-per-node:200}") int maxConnectionsPerNode) {
+        return new RestClientBuilderCustomizer() {
+            @Override
+            public void customize(RestClientBuilder builder) {
+            }
+
+            @Override
+            public void customize(HttpAsyncClientBuilder builder) {
+                builder.setMaxConnTotal(maxConnections);
+                builder.setMaxConnPerRoute(maxConnectionsPerNode);
+            }
+        };
+    }
+}
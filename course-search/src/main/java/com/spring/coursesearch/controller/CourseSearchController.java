@@ -1,23 +1,83 @@
 package com.spring.coursesearch.controller;
 
-import com.spring.coursesearch.entity.CourseDocument;
+import com.spring.coursesearch.entity.CourseSummaryProjection;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.spring.coursesearch.services.BackendOverloadedException;
+import com.spring.coursesearch.services.CourseSearchMetrics;
 import com.spring.coursesearch.services.CourseSearchService;
-import org.springframework.beans.factory.annotation.Autowired;
+import com.spring.coursesearch.services.FacetBucket;
+import com.spring.coursesearch.services.InvalidSearchException;
+import com.spring.coursesearch.services.SearchCursor;
+import com.spring.coursesearch.services.SearchParameters;
+import com.spring.coursesearch.services.SuggestionCache;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.data.elasticsearch.core.SearchHit;
 import org.springframework.data.elasticsearch.core.SearchHits;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ProblemDetail;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.async.AsyncWebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Callable;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @RestController
 @RequestMapping("/api/search")
 public class CourseSearchController {
 
-    @Autowired
-    private CourseSearchService searchService;
+    private static final String NDJSON = "application/x-ndjson";
+
+    private static final String EXPORT_TIMEOUT = CourseSearchController.class.getName() + ".exportTimeout";
+
+    private final CourseSearchService searchService;
+    private final SuggestionCache suggestionCache;
+    private final ObjectMapper objectMapper;
+    private final CourseSearchMetrics metrics;
+
+    @Value("${course-search.search.export.timeout:30m}")
+    private Duration exportTimeout = Duration.ofMinutes(30);
+
+    @Value("${course-search.search.batch.max-searches:20}")
+    private int maxBatchSearches = 20;
+
+    public CourseSearchController(CourseSearchService searchService, SuggestionCache suggestionCache,
+                                  ObjectMapper objectMapper, CourseSearchMetrics metrics) {
+        this.searchService = searchService;
+        this.suggestionCache = suggestionCache;
+        this.objectMapper = objectMapper;
+        this.metrics = metrics;
+    }
 
     @GetMapping
     public SearchResponse search(
@@ -31,33 +91,160 @@ public class CourseSearchController {
             @RequestParam(required = false) String startDate,
             @RequestParam(defaultValue = "upcoming") String sort,
             @RequestParam(defaultValue = "0") int page,
-            @RequestParam(defaultValue = "10") int size) {
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "false") boolean pit,
+            @RequestParam(defaultValue = "false") boolean facets) {
 
-        SearchHits<CourseDocument> searchHits = searchService.searchCourses(
-                q, minAge, maxAge, category, type, minPrice, maxPrice, startDate, sort, page, size);
+        Timer.Sample sample = metrics.start();
+        SearchParameters parameters = SearchParameters.of(
+                q, minAge, maxAge, category, type, minPrice, maxPrice, startDate, sort, page, size, facets);
 
-        List<CourseSummary> courses = searchHits.getSearchHits().stream()
-                .map(hit -> {
-                    CourseDocument doc = hit.getContent();
-                    return new CourseSummary(doc.getId(), doc.getTitle(), doc.getCategory(), doc.getPrice(), doc.getNextSessionDate());
-                })
+        // Cursor mode: an empty cursor starts a search_after walk, later pages pass back nextCursor
+        if (cursor != null) {
+            CourseSearchService.CursorPage cursorPage;
+            try {
+                SearchCursor after = cursor.isEmpty() || "*".equals(cursor) ? null : SearchCursor.decode(cursor);
+                cursorPage = searchService.searchCoursesAfter(parameters, after, pit);
+            } catch (IllegalArgumentException e) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+            }
+            SearchHits<CourseSummaryProjection> searchHits = cursorPage.searchHits();
+            String nextCursor = cursorPage.nextCursor() != null ? cursorPage.nextCursor().encode() : null;
+            metrics.recordSearch(sample, parameters, "cursor", searchHits);
+            return toResponse(searchHits, nextCursor, facets);
+        }
+
+        SearchHits<CourseSummaryProjection> searchHits = searchService.searchCourses(parameters);
+        metrics.recordSearch(sample, parameters, "page", searchHits);
+        return toResponse(searchHits, null, facets);
+    }
+
+    @GetMapping(value = "/export", produces = NDJSON)
+    public ResponseEntity<StreamingResponseBody> export(
+            @RequestParam(required = false) String q,
+            @RequestParam(required = false) Integer minAge,
+            @RequestParam(required = false) Integer maxAge,
+            @RequestParam(required = false) String category,
+            @RequestParam(required = false) String type,
+            @RequestParam(required = false) Double minPrice,
+            @RequestParam(required = false) Double maxPrice,
+            @RequestParam(required = false) String startDate,
+            @RequestParam(defaultValue = "upcoming") String sort,
+            NativeWebRequest request) {
+
+        SearchParameters parameters = SearchParameters.of(
+                q, minAge, maxAge, category, type, minPrice, maxPrice, startDate, sort, 0, 0);
+
+        // A full export outlives spring.mvc.async.request-timeout, so it gets its own limit
+        WebAsyncUtils.getAsyncManager(request).registerCallableInterceptor(EXPORT_TIMEOUT,
+                new CallableProcessingInterceptor() {
+                    @Override
+                    public <T> void beforeConcurrentHandling(NativeWebRequest asyncRequest, Callable<T> task) {
+                        ((AsyncWebRequest) asyncRequest).setTimeout(exportTimeout.toMillis());
+                    }
+                });
+
+        // One CourseSummary per line, written while the backend streams so memory stays flat
+        ObjectWriter writer = objectMapper.writerFor(CourseSummary.class)
+                .withRootValueSeparator("\n")
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE)
+                .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        StreamingResponseBody body = out -> {
+            try (Stream<SearchHit<CourseSummaryProjection>> hits = searchService.streamCourses(parameters);
+                 SequenceWriter lines = writer.writeValues(out)) {
+                for (Iterator<SearchHit<CourseSummaryProjection>> it = hits.iterator(); it.hasNext(); ) {
+                    lines.write(CourseSummary.of(it.next().getContent()));
+                }
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(NDJSON)).body(body);
+    }
+
+    /**
+     * Runs up to {@code course-search.search.batch.max-searches} searches in one Elasticsearch round trip,
+     * e.g. one per category carousel on a dashboard. Results are returned in request order.
+     */
+    @PostMapping("/batch")
+    public List<SearchResponse> batch(@RequestBody List<SearchRequest> requests) {
+        if (requests.size() > maxBatchSearches) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "At most " + maxBatchSearches + " searches per batch");
+        }
+
+        List<SearchParameters> batch = requests.stream()
+                .map(r -> SearchParameters.of(r.getQ(), r.getMinAge(), r.getMaxAge(), r.getCategory(), r.getType(),
+                        r.getMinPrice(), r.getMaxPrice(), r.getStartDate(), r.getSort(), r.getPage(), r.getSize(),
+                        r.isFacets()))
                 .collect(Collectors.toList());
+        List<SearchHits<CourseSummaryProjection>> results = searchService.searchCoursesBatch(batch);
+        List<SearchResponse> responses = new ArrayList<>(results.size());
+        for (int i = 0; i < results.size(); i++) {
+            responses.add(toResponse(results.get(i), null, batch.get(i).facets()));
+        }
+        return responses;
+    }
 
-        return new SearchResponse(searchHits.getTotalHits(), courses);
+    // Hits are written straight to the response by SearchResponseSerializer, without mapping them to CourseSummary first
+    private SearchResponse toResponse(SearchHits<CourseSummaryProjection> searchHits, String nextCursor,
+                                      boolean facets) {
+        return SearchResponse.ofHits(searchHits.getTotalHits(), searchHits.getSearchHits(), nextCursor,
+                facets ? searchService.facets(searchHits) : null);
     }
 
     @GetMapping("/suggest")
     public List<String> suggest(@RequestParam String q) {
-        return searchService.suggestTitles(q);
+        Timer.Sample sample = metrics.start();
+        Optional<List<String>> cached = suggestionCache.lookup(q);
+        if (cached.isPresent()) {
+            metrics.recordSuggest(sample, "cache", cached.get().size());
+            return cached.get();
+        }
+        CourseSearchService.Suggestions suggestions = searchService.suggestTitles(q);
+        metrics.recordSuggest(sample, suggestions.source(), suggestions.titles().size());
+        return suggestions.titles();
+    }
+
+    @ExceptionHandler(InvalidSearchException.class)
+    public ResponseEntity<ProblemDetail> invalidSearch(InvalidSearchException e) {
+        return ResponseEntity.badRequest().body(ProblemDetail.forStatusAndDetail(HttpStatus.BAD_REQUEST, e.getMessage()));
     }
 
+    // Shed or over its time budget with nothing to fall back on: fail fast and let the client retry shortly
+    @ExceptionHandler({BackendOverloadedException.class, QueryTimeoutException.class})
+    public ResponseEntity<Void> backendUnavailable() {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "1").build();
+    }
+
+    @JsonSerialize(using = SearchResponseSerializer.class)
     public static class SearchResponse {
         private final long total;
         private final List<CourseSummary> courses;
+        // Set instead of courses for responses built from search results
+        private final List<SearchHit<CourseSummaryProjection>> hits;
+        private final String nextCursor;
+        private final Map<String, List<FacetBucket>> facets;
+
+        @JsonCreator
+        public SearchResponse(@JsonProperty("total") long total,
+                              @JsonProperty("courses") List<CourseSummary> courses,
+                              @JsonProperty("nextCursor") String nextCursor,
+                              @JsonProperty("facets") Map<String, List<FacetBucket>> facets) {
+            this(total, courses, null, nextCursor, facets);
+        }
+
+        static SearchResponse ofHits(long total, List<SearchHit<CourseSummaryProjection>> hits, String nextCursor,
+                                     Map<String, List<FacetBucket>> facets) {
+            return new SearchResponse(total, null, hits, nextCursor, facets);
+        }
 
-        public SearchResponse(long total, List<CourseSummary> courses) {
+        private SearchResponse(long total, List<CourseSummary> courses, List<SearchHit<CourseSummaryProjection>> hits,
+                               String nextCursor, Map<String, List<FacetBucket>> facets) {
             this.total = total;
             this.courses = courses;
+            this.hits = hits;
+            this.nextCursor = nextCursor;
+            this.facets = facets;
         }
 
         public long getTotal() {
@@ -65,7 +252,138 @@ public class CourseSearchController {
         }
 
         public List<CourseSummary> getCourses() {
-            return courses;
+            if (hits == null) {
+                return courses;
+            }
+            return hits.stream().map(hit -> CourseSummary.of(hit.getContent())).collect(Collectors.toList());
+        }
+
+        List<SearchHit<CourseSummaryProjection>> getHits() {
+            return hits;
+        }
+
+        // Only present in cursor mode while more results remain
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        public String getNextCursor() {
+            return nextCursor;
+        }
+
+        // Only present when facets were requested
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        public Map<String, List<FacetBucket>> getFacets() {
+            return facets;
+        }
+    }
+
+    // One entry of a batch request; same parameters and defaults as GET /api/search
+    public static class SearchRequest {
+        private String q;
+        private Integer minAge;
+        private Integer maxAge;
+        private String category;
+        private String type;
+        private Double minPrice;
+        private Double maxPrice;
+        private String startDate;
+        private String sort = "upcoming";
+        private int page = 0;
+        private int size = 10;
+        private boolean facets;
+
+        public String getQ() {
+            return q;
+        }
+
+        public void setQ(String q) {
+            this.q = q;
+        }
+
+        public Integer getMinAge() {
+            return minAge;
+        }
+
+        public void setMinAge(Integer minAge) {
+            this.minAge = minAge;
+        }
+
+        public Integer getMaxAge() {
+            return maxAge;
+        }
+
+        public void setMaxAge(Integer maxAge) {
+            this.maxAge = maxAge;
+        }
+
+        public String getCategory() {
+            return category;
+        }
+
+        public void setCategory(String category) {
+            this.category = category;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public void setType(String type) {
+            this.type = type;
+        }
+
+        public Double getMinPrice() {
+            return minPrice;
+        }
+
+        public void setMinPrice(Double minPrice) {
+            this.minPrice = minPrice;
+        }
+
+        public Double getMaxPrice() {
+            return maxPrice;
+        }
+
+        public void setMaxPrice(Double maxPrice) {
+            this.maxPrice = maxPrice;
+        }
+
+        public String getStartDate() {
+            return startDate;
+        }
+
+        public void setStartDate(String startDate) {
+            this.startDate = startDate;
+        }
+
+        public String getSort() {
+            return sort;
+        }
+
+        public void setSort(String sort) {
+            this.sort = sort;
+        }
+
+        public int getPage() {
+            return page;
+        }
+
+        public void setPage(int page) {
+            this.page = page;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        public void setSize(int size) {
+            this.size = size;
+        }
+
+        public boolean isFacets() {
+            return facets;
+        }
+
+        public void setFacets(boolean facets) {
+            this.facets = facets;
         }
     }
 
@@ -84,6 +402,10 @@ public class CourseSearchController {
             this.nextSessionDate = nextSessionDate;
         }
 
+        public static CourseSummary of(CourseSummaryProjection doc) {
+            return new CourseSummary(doc.getId(), doc.getTitle(), doc.getCategory(), doc.getPrice(), doc.getNextSessionDate());
+        }
+
         public String getId() {
             return id;
         }
@@ -0,0 +1,40 @@
+package com.spring.coursesearch.controller;
+
+import com.spring.coursesearch.services.InMemorySearchBackend;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.InvalidEndpointRequestException;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * {@code /actuator/searchbackend}: shows and switches the backend that answers searches and suggestions.
+ */
+@Component
+@Endpoint(id = "searchbackend")
+public class SearchBackendEndpoint {
+
+    @Autowired
+    private InMemorySearchBackend memoryBackend;
+
+    @ReadOperation
+    public Map<String, Object> backend() {
+        return Map.of(
+                "mode", memoryBackend.getMode().name().toLowerCase(Locale.ROOT),
+                "inMemoryCourses", memoryBackend.getCourseCount());
+    }
+
+    @WriteOperation
+    public Map<String, Object> select(String mode) {
+        try {
+            memoryBackend.setMode(InMemorySearchBackend.parseMode(mode));
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            throw new InvalidEndpointRequestException(e.getMessage(), e.getMessage());
+        }
+        return backend();
+    }
+}
@@ -0,0 +1,75 @@
+package com.spring.coursesearch.controller;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import com.spring.coursesearch.controller.CourseSearchController.CourseSummary;
+import com.spring.coursesearch.controller.CourseSearchController.SearchResponse;
+import com.spring.coursesearch.entity.CourseSummaryProjection;
+import org.springframework.data.elasticsearch.core.SearchHit;
+
+import java.io.IOException;
+
+/**
+ * Writes a {@link SearchResponse} field by field, reading search hits directly instead of going through a
+ * {@code List<CourseSummary>}. Works with any Jackson generator, so JSON, CBOR and Smile share the same layout.
+ */
+class SearchResponseSerializer extends StdSerializer<SearchResponse> {
+
+    private static final long serialVersionUID = 1L;
+
+    SearchResponseSerializer() {
+        super(SearchResponse.class);
+    }
+
+    @Override
+    public void serialize(SearchResponse response, JsonGenerator generator, SerializerProvider provider)
+            throws IOException {
+        generator.writeStartObject(response);
+        generator.writeNumberField("total", response.getTotal());
+
+        generator.writeFieldName("courses");
+        if (response.getHits() != null) {
+            generator.writeStartArray(response.getHits(), response.getHits().size());
+            for (SearchHit<CourseSummaryProjection> hit : response.getHits()) {
+                CourseSummaryProjection doc = hit.getContent();
+                writeCourse(generator, doc.getId(), doc.getTitle(), doc.getCategory(), doc.getPrice(),
+                        doc.getNextSessionDate());
+            }
+            generator.writeEndArray();
+        } else if (response.getCourses() != null) {
+            generator.writeStartArray(response.getCourses(), response.getCourses().size());
+            for (CourseSummary course : response.getCourses()) {
+                writeCourse(generator, course.getId(), course.getTitle(), course.getCategory(), course.getPrice(),
+                        course.getNextSessionDate());
+            }
+            generator.writeEndArray();
+        } else {
+            generator.writeNull();
+        }
+
+        if (response.getNextCursor() != null) {
+            generator.writeStringField("nextCursor", response.getNextCursor());
+        }
+        if (response.getFacets() != null) {
+            provider.defaultSerializeField("facets", response.getFacets(), generator);
+        }
+        generator.writeEndObject();
+    }
+
+    // Must stay in step with the fields of CourseSummary; InMemorySearchIntegrationTest checks every one is written
+    private static void writeCourse(JsonGenerator generator, String id, String title, String category, Double price,
+                                    String nextSessionDate) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("id", id);
+        generator.writeStringField("title", title);
+        generator.writeStringField("category", category);
+        if (price != null) {
+            generator.writeNumberField("price", price.doubleValue());
+        } else {
+            generator.writeNullField("price");
+        }
+        generator.writeStringField("nextSessionDate", nextSessionDate);
+        generator.writeEndObject();
+    }
+}
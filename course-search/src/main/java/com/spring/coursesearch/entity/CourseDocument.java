@@ -6,21 +6,36 @@ import org.springframework.data.elasticsearch.annotations.CompletionField;
 import org.springframework.data.elasticsearch.annotations.Document;
 import org.springframework.data.elasticsearch.annotations.Field;
 import org.springframework.data.elasticsearch.annotations.FieldType;
+import org.springframework.data.elasticsearch.annotations.IndexPrefixes;
+import org.springframework.data.elasticsearch.annotations.InnerField;
+import org.springframework.data.elasticsearch.annotations.MultiField;
+import org.springframework.data.elasticsearch.annotations.Setting;
+import org.springframework.data.elasticsearch.core.suggest.Completion;
 
 @Data
-@Document(indexName = "courses")
+@Document(indexName = "courses", createIndex = false)
+@Setting(settingPath = "/elasticsearch/course-settings.json")
 public class CourseDocument {
     @Id
     private String id;
 
-    @Field(type = FieldType.Text)
+    // title.prefix holds edge n-grams so prefix matches are term lookups; title.keyword backs the title sort
+    @MultiField(
+            mainField = @Field(type = FieldType.Text),
+            otherFields = {
+                    @InnerField(suffix = "prefix", type = FieldType.Text,
+                            analyzer = "title_prefix", searchAnalyzer = "title_prefix_search"),
+                    @InnerField(suffix = "keyword", type = FieldType.Keyword,
+                            normalizer = "lowercase_keyword", ignoreAbove = 256)
+            })
     private String title;
 
-    // For Fuzzy Search
-    @CompletionField
-    private String suggest;
+    // Completion input for autocomplete; the weight ranks suggestions sharing a prefix
+    @CompletionField(maxInputLength = 100)
+    private Completion suggest;
 
-    @Field(type = FieldType.Text)
+    // Indexes term prefixes so the trailing query term is matched without expanding over the term dictionary
+    @Field(type = FieldType.Text, indexPrefixes = @IndexPrefixes(minChars = 1, maxChars = 10))
     private String description;
 
     @Field(type = FieldType.Keyword)
@@ -41,6 +56,10 @@ public class CourseDocument {
     @Field(type = FieldType.Double)
     private Double price;
 
+    // Popularity signal from the source catalog, stored as a rank feature for the relevance sort; must be positive
+    @Field(type = FieldType.Rank_Feature)
+    private Double popularity;
+
     @Field(type = FieldType.Date, format = {}, pattern = "uuuu-MM-dd'T'HH:mm:ss'Z'")
     private String nextSessionDate;
-}
\ No newline at end of file
+}
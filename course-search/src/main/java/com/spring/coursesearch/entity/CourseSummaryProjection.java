@@ -0,0 +1,22 @@
+package com.spring.coursesearch.entity;
+
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+
+/**
+ * Read-only view of the fields a search result needs. Hits are mapped into this instead of {@link CourseDocument}
+ * so the description and suggest inputs are neither transferred nor deserialized.
+ */
+@Data
+public class CourseSummaryProjection {
+    @Id
+    private String id;
+
+    private String title;
+
+    private String category;
+
+    private Double price;
+
+    private String nextSessionDate;
+}
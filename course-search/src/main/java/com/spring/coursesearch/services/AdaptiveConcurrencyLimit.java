@@ -0,0 +1,52 @@
+package com.spring.coursesearch.services;
+
+/**
+ * AIMD concurrency limit: grows by one per limit's worth of fast calls while it is in use and shrinks by a
+ * constant factor on every slow or failed call, so it settles just below the concurrency the backend sustains.
+ */
+final class AdaptiveConcurrencyLimit {
+
+    private static final double BACKOFF = 0.9;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long latencyThresholdNanos;
+
+    // Guarded by this; the critical sections never block
+    private double limit;
+    private int inFlight;
+
+    AdaptiveConcurrencyLimit(int initialLimit, int minLimit, int maxLimit, long latencyThresholdNanos) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.latencyThresholdNanos = latencyThresholdNanos;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    synchronized boolean tryAcquire() {
+        if (inFlight >= (int) limit) {
+            return false;
+        }
+        inFlight++;
+        return true;
+    }
+
+    synchronized void release(long latencyNanos, boolean failed) {
+        // Calls finished while well below the limit say nothing about whether a higher one would be sustained
+        boolean saturated = inFlight * 2 >= limit;
+        inFlight--;
+        if (failed || latencyNanos > latencyThresholdNanos) {
+            limit = Math.max(minLimit, limit * BACKOFF);
+        } else if (saturated) {
+            limit = Math.min(maxLimit, limit + 1 / limit);
+        }
+    }
+
+    synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    synchronized int getInFlight() {
+        return inFlight;
+    }
+}
@@ -0,0 +1,17 @@
+package com.spring.coursesearch.services;
+
+import org.springframework.dao.TransientDataAccessResourceException;
+
+/**
+ * Thrown without calling Elasticsearch when the adaptive concurrency limit is reached.
+ * Being a {@link org.springframework.dao.DataAccessException}, it is answered like any other backend failure:
+ * from the in-memory index or a stale cached result when available.
+ */
+public class BackendOverloadedException extends TransientDataAccessResourceException {
+
+    private static final long serialVersionUID = 1L;
+
+    public BackendOverloadedException(String operation, int limit) {
+        super("Elasticsearch " + operation + " shed: " + limit + " calls already in flight");
+    }
+}
@@ -0,0 +1,10 @@
+package com.spring.coursesearch.services;
+
+import java.util.List;
+
+/**
+ * Published once a batch of synced changes is searchable. Unlike {@link CatalogReloadedEvent} it carries the applied
+ * changes, so in-process caches can patch themselves instead of reading the whole catalog again.
+ */
+public record CatalogChangedEvent(String indexName, List<CourseChange> changes) {
+}
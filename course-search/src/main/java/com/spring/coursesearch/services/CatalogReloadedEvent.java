@@ -0,0 +1,8 @@
+package com.spring.coursesearch.services;
+
+/**
+ * Published once a full catalog load, or a change touching much of the catalog such as dropped partitions, is
+ * searchable, so in-process caches can rebuild. {@code indexed} counts the courses loaded or changed.
+ */
+public record CatalogReloadedEvent(String indexName, long indexed) {
+}
@@ -0,0 +1,576 @@
+package com.spring.coursesearch.services;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.Conflicts;
+import co.elastic.clients.elasticsearch._types.VersionType;
+import co.elastic.clients.elasticsearch.core.BulkResponse;
+import co.elastic.clients.elasticsearch.core.SearchResponse;
+import co.elastic.clients.elasticsearch.core.UpdateByQueryResponse;
+import co.elastic.clients.elasticsearch.core.bulk.BulkOperation;
+import co.elastic.clients.elasticsearch.core.bulk.BulkResponseItem;
+import co.elastic.clients.elasticsearch.core.search.Hit;
+import co.elastic.clients.json.JsonData;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.document.Document;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Follows an append-only change feed of course upserts and deletes and applies only those changes, so a catalog
+ * update costs time in proportion to what changed. The feed is newline-delimited JSON, one {@link CourseChange} per
+ * line. Changes go out as bulk requests with external versioning, which makes replaying a line harmless; the byte
+ * offset of the last applied line is kept in a checkpoint file so a restart resumes where it stopped.
+ * <p>
+ * With monthly index partitions a course lives in the partition of its session month, so each batch first looks up
+ * where its courses are, and a course whose session moves to another month is deleted from its old partition.
+ * Partitions of past months are dropped on a schedule, together with their courses in the in-memory index.
+ */
+@Slf4j
+@Service
+public class CatalogSyncService {
+
+    private static final String VERSION_CONFLICT = "version_conflict_engine_exception";
+
+    // Same rule as DataLoaderService.suggestWeight; unchanged weights are left alone so they are not rewritten
+    private static final String SUGGEST_WEIGHT_SCRIPT = """
+            if (ctx._source.suggest == null) { ctx.op = 'noop'; return; }
+            long days = ChronoUnit.DAYS.between(Instant.ofEpochMilli(params.now), Instant.parse(ctx._source.nextSessionDate));
+            int weight = days >= 0 && days < 365 ? (int) (366 - days) : 1;
+            if (ctx._source.suggest.weight == weight) { ctx.op = 'noop'; } else { ctx._source.suggest.weight = weight; }
+            """;
+
+    private final ElasticsearchClient elasticsearchClient;
+    private final ElasticsearchOperations elasticsearchOperations;
+    private final InMemorySearchBackend memoryBackend;
+    private final CourseSearchMetrics metrics;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ObjectMapper objectMapper;
+    private final CourseIndexManager courseIndexManager;
+
+    // Change feed to follow; empty disables syncing
+    @Value("${course-search.sync.delta-file:}")
+    private String deltaFile = "";
+
+    // Defaults to the delta file with a .checkpoint suffix
+    @Value("${course-search.sync.checkpoint-file:}")
+    private String checkpointFile = "";
+
+    @Value("${course-search.ingest.batch-size:1000}")
+    private int batchSize = 1000;
+
+    // Bulk items rejected with 429 or 5xx are resent this many times, backing off exponentially, before the batch
+    // is left for the next poll
+    @Value("${course-search.sync.max-retries:3}")
+    private int maxRetries = 3;
+
+    @Value("${course-search.sync.retry-backoff:500ms}")
+    private Duration retryBackoff = Duration.ofMillis(500);
+
+    // Past months kept before their partitions are dropped; 0 keeps only the current month onwards
+    @Value("${course-search.index.partition-retention:0}")
+    private int partitionRetention = 0;
+
+    // Rebuilding the in-memory index costs time proportional to the whole catalog, so synced changes are collected
+    // and built at most this often; searches on the in-memory index can lag behind Elasticsearch by as much
+    @Value("${course-search.sync.memory-rebuild-interval:30s}")
+    private Duration memoryRebuildInterval = Duration.ofSeconds(30);
+
+    private volatile boolean started;
+    // Set once any catalog is loaded, whether or not a change feed is followed
+    private volatile boolean loaded;
+    // Byte offset just past the last applied line; guarded by this
+    private long offset;
+    // Synced changes not yet built into the published in-memory index, and the index they apply to; guarded by this
+    private InMemoryCourseIndex.Builder memoryChanges;
+    private InMemoryCourseIndex memoryChangesBase;
+    private boolean memoryChangesPending;
+    // System.nanoTime() of the last build, null until the first changes after a full load, which are built at once
+    private Long lastMemoryBuild;
+
+    public CatalogSyncService(ElasticsearchClient elasticsearchClient, ElasticsearchOperations elasticsearchOperations,
+                              InMemorySearchBackend memoryBackend, CourseSearchMetrics metrics,
+                              ApplicationEventPublisher eventPublisher, ObjectMapper objectMapper,
+                              CourseIndexManager courseIndexManager) {
+        this.elasticsearchClient = elasticsearchClient;
+        this.elasticsearchOperations = elasticsearchOperations;
+        this.memoryBackend = memoryBackend;
+        this.metrics = metrics;
+        this.eventPublisher = eventPublisher;
+        this.objectMapper = objectMapper;
+        this.courseIndexManager = courseIndexManager;
+    }
+
+    public boolean isEnabled() {
+        return !deltaFile.isBlank();
+    }
+
+    /**
+     * Applies the pending changes and starts polling the feed. After a full load the whole feed is replayed,
+     * since the fresh catalog has none of its changes; otherwise syncing resumes at the checkpoint.
+     */
+    public synchronized SyncReport start(boolean fullLoad) throws IOException {
+        loaded = true;
+        if (!isEnabled()) {
+            return SyncReport.NONE;
+        }
+        offset = fullLoad ? 0 : readCheckpoint();
+        started = true;
+        log.info("Following catalog changes in '{}' from offset {}", deltaFile, offset);
+        return sync();
+    }
+
+    @Scheduled(fixedDelayString = "${course-search.sync.poll-interval:10s}")
+    public void poll() {
+        if (!started) {
+            return;
+        }
+        try {
+            sync();
+        } catch (IOException | RuntimeException e) {
+            log.warn("Syncing catalog changes from '{}' failed, retrying at the next poll", deltaFile, e);
+        }
+    }
+
+    /**
+     * Applies every complete line appended to the feed since the last call. Within a batch only the newest change
+     * per course is sent. A batch that cannot be sent leaves the checkpoint before it, so it is retried.
+     */
+    public synchronized SyncReport sync() throws IOException {
+        Path path = Path.of(deltaFile);
+        if (!isEnabled() || !Files.exists(path)) {
+            return SyncReport.NONE;
+        }
+        long length = Files.size(path);
+        if (length < offset) {
+            log.warn("'{}' is shorter than the checkpoint, replaying it from the start", deltaFile);
+            offset = 0;
+        }
+        // A quiet feed still gets the changes of earlier polls built once their interval is up
+        if (publishMemoryChanges(false)) {
+            eventPublisher.publishEvent(new CatalogChangedEvent(InMemorySearchBackend.INDEX_NAME, List.of()));
+        }
+        if (length == offset) {
+            return SyncReport.NONE;
+        }
+
+        long start = System.currentTimeMillis();
+        Counts counts = new Counts();
+        InMemoryCourseIndex.Builder memoryIndex = memoryChanges();
+        try (SeekableByteChannel channel = Files.newByteChannel(path).position(offset);
+             InputStream in = new BufferedInputStream(Channels.newInputStream(channel))) {
+            Map<String, CourseChange> batch = new LinkedHashMap<>();
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            long position = offset;
+            int b;
+            while ((b = in.read()) != -1) {
+                position++;
+                if (b != '\n') {
+                    line.write(b);
+                    continue;
+                }
+                CourseChange change = parse(line.toString(StandardCharsets.UTF_8), position);
+                line.reset();
+                if (change != null) {
+                    batch.merge(change.courseId(), change, (a, c) -> c.version() > a.version() ? c : a);
+                }
+                if (batch.size() >= batchSize) {
+                    apply(batch.values(), counts, memoryIndex);
+                    batch.clear();
+                    checkpoint(position);
+                }
+            }
+            // Anything after the last newline is a line still being written and is read at the next poll
+            long end = position - line.size();
+            if (!batch.isEmpty()) {
+                apply(batch.values(), counts, memoryIndex);
+            }
+            checkpoint(end);
+        } finally {
+            if (counts.applied > 0) {
+                publish(counts, memoryIndex);
+            }
+        }
+
+        SyncReport report = new SyncReport(counts.applied, counts.stale, counts.failed, counts.batches,
+                System.currentTimeMillis() - start);
+        metrics.recordSync(report);
+        log.info("Synced catalog changes from '{}': {} applied, {} stale, {} failed in {} batches in {} ms",
+                deltaFile, report.applied(), report.stale(), report.failed(), report.batches(), report.tookMillis());
+        return report;
+    }
+
+    private CourseChange parse(String line, long position) {
+        if (line.isBlank()) {
+            return null;
+        }
+        String problem;
+        try {
+            CourseChange change = objectMapper.readValue(line, CourseChange.class);
+            if (change.isValid()) {
+                return change;
+            }
+            problem = "an op, an id and a positive version are required";
+        } catch (JsonProcessingException e) {
+            problem = e.getOriginalMessage();
+        }
+        log.warn("Skipping invalid change before offset {} of '{}': {}", position, deltaFile, problem);
+        return null;
+    }
+
+    private void apply(Collection<CourseChange> changes, Counts counts, InMemoryCourseIndex.Builder memoryIndex)
+            throws IOException {
+        counts.batches++;
+        for (CourseChange change : changes) {
+            if (change.course() != null) {
+                change.course().setId(change.courseId());
+                DataLoaderService.prepare(change.course());
+            }
+        }
+
+        if (memoryBackend.getMode() == InMemorySearchBackend.Mode.MEMORY) {
+            for (CourseChange change : changes) {
+                if (applyTo(memoryIndex, change)) {
+                    counts.applied(change);
+                } else {
+                    counts.stale++;
+                }
+            }
+            return;
+        }
+        // The in-memory index only takes what Elasticsearch holds, so both keep the same catalog; its own version
+        // check skips the changes it already has
+        for (CourseChange change : bulk(changes, counts)) {
+            if (memoryIndex != null) {
+                applyTo(memoryIndex, change);
+            }
+        }
+    }
+
+    // Returns the changes Elasticsearch holds at their version or a newer one, to be mirrored in the in-memory index
+    private List<CourseChange> bulk(Collection<CourseChange> changes, Counts counts) throws IOException {
+        boolean partitioned = courseIndexManager.isPartitioned();
+        Map<String, Located> located = partitioned ? locate(changes) : Map.of();
+        List<CourseChange> held = new ArrayList<>(changes.size());
+        List<BulkOperation> operations = new ArrayList<>(changes.size());
+        // The change behind each bulk item; null for the delete that follows a course into another partition
+        List<CourseChange> sent = new ArrayList<>(changes.size());
+        for (CourseChange change : changes) {
+            Located current = located.get(change.courseId());
+            if (current != null && current.version() >= change.version()) {
+                held.add(change);
+                counts.stale++;
+                continue;
+            }
+            if (change.op() == CourseChange.Op.DELETE) {
+                if (partitioned && current == null) {
+                    // Not in any partition, so there is nothing to delete
+                    held.add(change);
+                    counts.applied(change);
+                    continue;
+                }
+                String index = current != null ? current.index() : null;
+                operations.add(BulkOperation.of(op -> op.delete(d -> d.index(index)
+                        .id(change.courseId()).version(change.version()).versionType(VersionType.External))));
+                sent.add(change);
+            } else {
+                String index = partitioned ? courseIndexManager.writeIndexFor(change.course()) : null;
+                Document source = elasticsearchOperations.getElasticsearchConverter().mapObject(change.course());
+                operations.add(BulkOperation.of(op -> op.index(i -> i.index(index)
+                        .id(change.courseId()).document(source).version(change.version()).versionType(VersionType.External))));
+                sent.add(change);
+                if (current != null && !current.index().equals(index)) {
+                    operations.add(BulkOperation.of(op -> op.delete(d -> d.index(current.index())
+                            .id(change.courseId()).version(change.version()).versionType(VersionType.External))));
+                    sent.add(null);
+                }
+            }
+        }
+
+        for (int attempt = 0; !operations.isEmpty(); attempt++) {
+            if (attempt > 0) {
+                pause(retryBackoff.multipliedBy(1L << (attempt - 1)));
+            }
+            long start = System.nanoTime();
+            List<BulkOperation> request = operations;
+            BulkResponse response = elasticsearchClient.bulk(b -> b.index(CourseIndexManager.ALIAS).operations(request));
+            List<BulkOperation> retry = new ArrayList<>();
+            List<CourseChange> retrySent = new ArrayList<>();
+            int failures = 0;
+            for (int i = 0; i < response.items().size(); i++) {
+                BulkResponseItem item = response.items().get(i);
+                CourseChange change = sent.get(i);
+                if (item.error() != null && isRetryable(item)) {
+                    retry.add(operations.get(i));
+                    retrySent.add(change);
+                } else if (change == null) {
+                    if (item.error() != null) {
+                        log.warn("Removing course '{}' from its previous partition '{}' failed: {}",
+                                item.id(), item.index(), item.error().reason());
+                    }
+                } else if (item.error() == null) {
+                    held.add(change);
+                    counts.applied(change);
+                } else if (VERSION_CONFLICT.equals(item.error().type())) {
+                    // Elasticsearch already has this version of the course or a newer one, e.g. from a batch
+                    // that was interrupted after Elasticsearch applied it
+                    held.add(change);
+                    counts.stale++;
+                } else {
+                    // Rejected for its content, e.g. a mapping error; resending the same document cannot succeed
+                    failures++;
+                    log.warn("Change to course '{}' at version {} failed: {}",
+                            change.courseId(), change.version(), item.error().reason());
+                }
+            }
+            counts.failed += failures;
+            metrics.recordBulk(System.nanoTime() - start, operations.size(), failures + retry.size());
+            if (!retry.isEmpty() && attempt == maxRetries) {
+                // Leaves the checkpoint before this batch; replaying it is harmless thanks to external versioning
+                throw new IOException(retry.size() + " catalog changes were still rejected after " + maxRetries
+                        + " retries, the batch is replayed at the next poll");
+            }
+            if (!retry.isEmpty()) {
+                log.debug("Resending {} catalog changes rejected by an overloaded or failing cluster", retry.size());
+            }
+            operations = retry;
+            sent = retrySent;
+        }
+        if (partitioned) {
+            // Searches are near real-time, so the next batch's lookup has to see this one
+            elasticsearchClient.indices().refresh(r -> r.index(CourseIndexManager.ALIAS));
+        }
+        return held;
+    }
+
+    // Rejected for load (429, e.g. es_rejected_execution_exception) or by an unavailable shard or node (5xx)
+    private static boolean isRetryable(BulkResponseItem item) {
+        return item.status() == 429 || item.status() >= 500;
+    }
+
+    private static void pause(Duration backoff) throws IOException {
+        try {
+            Thread.sleep(backoff);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while backing off from a rejected bulk request");
+        }
+    }
+
+    // Partition and version of each course of the batch that is currently indexed
+    private Map<String, Located> locate(Collection<CourseChange> changes) throws IOException {
+        List<String> ids = changes.stream().map(CourseChange::courseId).toList();
+        SearchResponse<Void> response = elasticsearchClient.search(s -> s
+                .index(CourseIndexManager.ALIAS)
+                .query(q -> q.ids(i -> i.values(ids)))
+                .size(ids.size())
+                .version(true)
+                .source(source -> source.fetch(false)), Void.class);
+        Map<String, Located> located = new HashMap<>();
+        for (Hit<Void> hit : response.hits().hits()) {
+            located.put(hit.id(), new Located(hit.index(), hit.version() != null ? hit.version() : 0));
+        }
+        return located;
+    }
+
+    @Scheduled(fixedDelayString = "${course-search.index.expiry-interval:1h}")
+    public void expire() {
+        if (!courseIndexManager.isPartitioned() || memoryBackend.getMode() == InMemorySearchBackend.Mode.MEMORY) {
+            return;
+        }
+        try {
+            dropExpiredPartitions();
+        } catch (RuntimeException e) {
+            log.warn("Dropping expired index partitions failed, retrying at the next check", e);
+        }
+    }
+
+    /**
+     * Drops the partitions of months before the retention window as whole indices, instead of deleting their
+     * courses one by one, and removes the same courses from the in-memory index. Returns the dropped partitions.
+     */
+    public synchronized List<String> dropExpiredPartitions() {
+        YearMonth before = YearMonth.now(ZoneOffset.UTC).minusMonths(partitionRetention);
+        List<String> dropped = courseIndexManager.dropPartitionsBefore(before);
+        if (dropped.isEmpty()) {
+            return dropped;
+        }
+        int removed = 0;
+        InMemoryCourseIndex.Builder memoryIndex = memoryChanges();
+        if (memoryIndex != null) {
+            removed = memoryIndex.removeSessionsBefore(before.atDay(1).atStartOfDay(ZoneOffset.UTC).toInstant());
+            memoryChangesPending = true;
+            publishMemoryChanges(true);
+        }
+        log.info("Dropped {} expired index partitions before {}, {} courses removed from the in-memory index",
+                dropped.size(), before, removed);
+        eventPublisher.publishEvent(new CatalogReloadedEvent(CourseIndexManager.ALIAS, removed));
+        return dropped;
+    }
+
+    @Scheduled(initialDelayString = "${course-search.suggest.reweight-interval:24h}",
+            fixedDelayString = "${course-search.suggest.reweight-interval:24h}")
+    public void reweight() {
+        if (!loaded) {
+            return;
+        }
+        try {
+            updateSuggestWeights();
+        } catch (IOException | RuntimeException e) {
+            log.warn("Recomputing suggest weights failed, retrying at the next check", e);
+        }
+    }
+
+    /**
+     * Recomputes the suggest weights, which rank courses by how soon their next session starts and so age from the
+     * moment they are indexed. Elasticsearch updates the changed courses in place with an update by query, which raises
+     * their internal version by one; timestamp-based change versions stay far ahead of that.
+     */
+    public synchronized void updateSuggestWeights() throws IOException {
+        Instant now = Instant.now();
+        long updated = 0;
+        if (memoryBackend.getMode() != InMemorySearchBackend.Mode.MEMORY) {
+            UpdateByQueryResponse response = elasticsearchClient.updateByQuery(r -> r
+                    .index(CourseIndexManager.ALIAS)
+                    .query(q -> q.exists(e -> e.field("nextSessionDate")))
+                    .script(script -> script.source(SUGGEST_WEIGHT_SCRIPT).params("now", JsonData.of(now.toEpochMilli())))
+                    .conflicts(Conflicts.Proceed)
+                    .refresh(true));
+            updated = response.updated() != null ? response.updated() : 0;
+        }
+        InMemoryCourseIndex.Builder memoryIndex = memoryChanges();
+        if (memoryIndex != null) {
+            int changed = memoryIndex.updateSuggestWeights(course -> DataLoaderService.suggestWeight(course, now));
+            if (changed > 0) {
+                memoryChangesPending = true;
+                publishMemoryChanges(true);
+            }
+            updated = Math.max(updated, changed);
+        }
+        log.info("Recomputed suggest weights, {} changed", updated);
+        if (updated > 0) {
+            eventPublisher.publishEvent(new CatalogReloadedEvent(CourseIndexManager.ALIAS, updated));
+        }
+    }
+
+    private static boolean applyTo(InMemoryCourseIndex.Builder memoryIndex, CourseChange change) {
+        return change.op() == CourseChange.Op.DELETE
+                ? memoryIndex.delete(change.courseId(), change.version())
+                : memoryIndex.upsert(change.course(), change.version());
+    }
+
+    private void publish(Counts counts, InMemoryCourseIndex.Builder memoryIndex) throws IOException {
+        String indexName = InMemorySearchBackend.INDEX_NAME;
+        if (memoryBackend.getMode() != InMemorySearchBackend.Mode.MEMORY) {
+            // The serving refresh interval is long, so synced changes are made visible right away
+            elasticsearchClient.indices().refresh(r -> r.index(CourseIndexManager.ALIAS));
+            indexName = CourseIndexManager.ALIAS;
+        }
+        if (memoryIndex != null) {
+            memoryChangesPending = true;
+            publishMemoryChanges(false);
+        }
+        eventPublisher.publishEvent(new CatalogChangedEvent(indexName, List.copyOf(counts.changes)));
+    }
+
+    // The builder collecting changes for the in-memory index, or null without one. It is kept across polls, so a poll
+    // costs time in its changes only, and is started again from the published index after a full load replaces it.
+    private InMemoryCourseIndex.Builder memoryChanges() {
+        InMemoryCourseIndex current = memoryBackend.getIndex();
+        if (current == null) {
+            return null;
+        }
+        if (current != memoryChangesBase) {
+            memoryChanges = current.toBuilder();
+            memoryChangesBase = current;
+            memoryChangesPending = false;
+            lastMemoryBuild = null;
+        }
+        return memoryChanges;
+    }
+
+    // Builds and publishes the collected changes once the rebuild interval is up, or now; returns whether it did
+    private boolean publishMemoryChanges(boolean now) {
+        if (!memoryChangesPending || memoryBackend.getIndex() != memoryChangesBase
+                || !now && lastMemoryBuild != null && System.nanoTime() - lastMemoryBuild < memoryRebuildInterval.toNanos()) {
+            return false;
+        }
+        InMemoryCourseIndex index = memoryChanges.build();
+        memoryBackend.publish(index);
+        memoryChangesBase = index;
+        memoryChangesPending = false;
+        lastMemoryBuild = System.nanoTime();
+        return true;
+    }
+
+    private Path checkpointPath() {
+        return Path.of(checkpointFile.isBlank() ? deltaFile + ".checkpoint" : checkpointFile);
+    }
+
+    private long readCheckpoint() throws IOException {
+        Path path = checkpointPath();
+        if (!Files.exists(path)) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(Files.readString(path).trim());
+        } catch (NumberFormatException e) {
+            log.warn("Ignoring unreadable checkpoint '{}', replaying '{}' from the start", path, deltaFile);
+            return 0;
+        }
+    }
+
+    private void checkpoint(long position) throws IOException {
+        offset = position;
+        Path path = checkpointPath();
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        Files.writeString(temp, Long.toString(position));
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private record Located(String index, long version) {
+    }
+
+    private static final class Counts {
+        private long applied;
+        private long stale;
+        private long failed;
+        private long batches;
+        private final List<CourseChange> changes = new ArrayList<>();
+
+        private void applied(CourseChange change) {
+            applied++;
+            changes.add(change);
+        }
+    }
+
+    public record SyncReport(long applied, long stale, long failed, long batches, long tookMillis) {
+        static final SyncReport NONE = new SyncReport(0, 0, 0, 0, 0);
+    }
+}
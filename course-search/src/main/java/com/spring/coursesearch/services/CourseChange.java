@@ -0,0 +1,29 @@
+package com.spring.coursesearch.services;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.spring.coursesearch.entity.CourseDocument;
+
+/**
+ * One line of the catalog change feed: an upsert carrying the full course, or a delete by id.
+ * {@code version} is applied as an Elasticsearch external version, so it must grow with every change to a course
+ * (e.g. the source system's modification time in milliseconds); older or repeated changes are skipped.
+ */
+public record CourseChange(Op op, String id, Long version, CourseDocument course) {
+
+    public enum Op {
+        @JsonProperty("upsert") UPSERT,
+        @JsonProperty("delete") DELETE
+    }
+
+    /**
+     * The course id, taken from the course itself when an upsert leaves {@code id} out.
+     */
+    public String courseId() {
+        return id != null ? id : course != null ? course.getId() : null;
+    }
+
+    boolean isValid() {
+        return op != null && courseId() != null && version != null && version > 0
+                && (op == Op.DELETE || course != null);
+    }
+}
@@ -0,0 +1,333 @@
+package com.spring.coursesearch.services;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import com.spring.coursesearch.entity.CourseDocument;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.IndexInformation;
+import org.springframework.data.elasticsearch.core.IndexOperations;
+import org.springframework.data.elasticsearch.core.index.AliasAction;
+import org.springframework.data.elasticsearch.core.index.AliasActionParameters;
+import org.springframework.data.elasticsearch.core.index.AliasActions;
+import org.springframework.data.elasticsearch.core.index.Settings;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Manages timestamped generations of the course index behind the {@code courses} alias.
+ * Searches always go through the alias, so a new generation only becomes visible once it is fully loaded.
+ * <p>
+ * With {@code course-search.index.partitioning=monthly} a generation is split into one index per month of
+ * {@code nextSessionDate} ({@code courses-<generation>-2025-07}, plus {@code courses-<generation>-undated}), all behind
+ * the alias. Searches with a start date then only read the partitions from that month on, and past months are
+ * dropped as whole indices.
+ */
+@Slf4j
+@Service
+public class CourseIndexManager {
+
+    public static final String ALIAS = "courses";
+
+    private static final DateTimeFormatter GENERATION_FORMAT =
+            DateTimeFormatter.ofPattern("yyyyMMddHHmmssSSS").withZone(ZoneOffset.UTC);
+
+    // Partition of courses without a next session date; never expires
+    private static final String UNDATED = "undated";
+    private static final Pattern PARTITION_NAME =
+            Pattern.compile("(" + ALIAS + "-\\d{17})-(\\d{4}-\\d{2}|" + UNDATED + ")");
+
+    private final ElasticsearchOperations elasticsearchOperations;
+    private final ElasticsearchClient elasticsearchClient;
+    private final boolean partitioned;
+    private final long servingPartitionsTtlNanos;
+
+    // Partitions already created, so each is only created once while loading or syncing
+    private final Set<String> createdPartitions = ConcurrentHashMap.newKeySet();
+    // Partitions currently behind the alias; null until read from Elasticsearch and after every local change.
+    // Re-read once older than the TTL, since another instance may have promoted or dropped partitions
+    private volatile ServingPartitions servingPartitions;
+
+    @Autowired
+    public CourseIndexManager(ElasticsearchOperations elasticsearchOperations, ElasticsearchClient elasticsearchClient,
+                              @Value("${course-search.index.partitioning:none}") String partitioning,
+                              @Value("${course-search.index.partition-cache-ttl:30s}") Duration servingPartitionsTtl) {
+        this.elasticsearchOperations = elasticsearchOperations;
+        this.elasticsearchClient = elasticsearchClient;
+        this.servingPartitionsTtlNanos = servingPartitionsTtl.toNanos();
+        this.partitioned = switch (partitioning.trim().toLowerCase(Locale.ROOT)) {
+            case "none" -> false;
+            case "monthly" -> true;
+            default -> throw new IllegalArgumentException("Unknown index partitioning '" + partitioning + "'");
+        };
+    }
+
+    public boolean isPartitioned() {
+        return partitioned;
+    }
+
+    /**
+     * Creates a new, empty generation tuned for bulk loading: no replicas and no periodic refresh.
+     * A partitioned generation has no index of its own; its partitions are created by {@link #partitionFor}.
+     */
+    public IndexCoordinates createGeneration() {
+        IndexCoordinates generation = IndexCoordinates.of(ALIAS + "-" + GENERATION_FORMAT.format(Instant.now()));
+        if (partitioned) {
+            log.info("Started partitioned index generation '{}'", generation.getIndexName());
+            return generation;
+        }
+        createLoadingIndex(generation);
+        log.info("Created index generation '{}'", generation.getIndexName());
+        return generation;
+    }
+
+    /**
+     * Returns the partition of {@code generation} that {@code course} belongs to, creating it for bulk loading
+     * on first use.
+     */
+    public String partitionFor(IndexCoordinates generation, CourseDocument course) {
+        String partition = generation.getIndexName() + "-" + partitionKey(course.getNextSessionDate());
+        if (createdPartitions.add(partition)) {
+            createLoadingIndex(IndexCoordinates.of(partition));
+            log.info("Created index partition '{}'", partition);
+        }
+        return partition;
+    }
+
+    private void createLoadingIndex(IndexCoordinates index) {
+        IndexOperations indexOps = elasticsearchOperations.indexOps(index);
+        Settings settings = indexOps.createSettings(CourseDocument.class).flatten();
+        settings.put("index.number_of_replicas", "0");
+        settings.put("index.auto_expand_replicas", "false");
+        settings.put("index.refresh_interval", "-1");
+        indexOps.create(settings, indexOps.createMapping(CourseDocument.class));
+    }
+
+    /**
+     * Restores the entity's serving settings on a loaded generation, force-merges it and atomically points the alias at it.
+     */
+    public void promote(IndexCoordinates generation) throws IOException {
+        String name = generation.getIndexName();
+        // Matches the generation's own index or all of its partitions
+        String indices = partitioned ? name + "-*" : name;
+        Settings serving = elasticsearchOperations.indexOps(generation).createSettings(CourseDocument.class).flatten();
+
+        // Replicas either follow auto_expand_replicas or a fixed count, whichever the settings file declares
+        Object autoExpandReplicas = serving.get("index.auto_expand_replicas");
+        Object numberOfReplicas = serving.get("index.number_of_replicas");
+        elasticsearchClient.indices().putSettings(r -> r
+                .index(indices)
+                .settings(s -> {
+                    s.autoExpandReplicas(autoExpandReplicas != null ? String.valueOf(autoExpandReplicas) : "false");
+                    if (numberOfReplicas != null) {
+                        s.numberOfReplicas(String.valueOf(numberOfReplicas));
+                    }
+                    return s.refreshInterval(t -> t.time(String.valueOf(serving.get("index.refresh_interval"))));
+                }));
+        elasticsearchClient.indices().refresh(r -> r.index(indices));
+        elasticsearchClient.indices().forcemerge(r -> r.index(indices).maxNumSegments(1L));
+
+        AliasActions actions = new AliasActions(new AliasAction.Add(
+                AliasActionParameters.builder().withIndices(indices).withAliases(ALIAS).build()));
+        if (elasticsearchClient.indices().existsAlias(r -> r.name(ALIAS)).value()) {
+            for (String previous : aliasedIndices()) {
+                actions.add(new AliasAction.Remove(
+                        AliasActionParameters.builder().withIndices(previous).withAliases(ALIAS).build()));
+            }
+        } else if (elasticsearchClient.indices().exists(r -> r.index(ALIAS)).value()) {
+            // A concrete index left over from the single-index layout blocks the alias name
+            actions.add(new AliasAction.RemoveIndex(AliasActionParameters.builder().withIndices(ALIAS).build()));
+        }
+        elasticsearchOperations.indexOps(generation).alias(actions);
+        servingPartitions = null;
+
+        log.info("Alias '{}' now points to '{}'", ALIAS, indices);
+    }
+
+    /**
+     * Whether a catalog is already served under the alias, either as a generation or as a single index.
+     */
+    public boolean catalogExists() {
+        return elasticsearchOperations.indexOps(IndexCoordinates.of(ALIAS)).exists();
+    }
+
+    /**
+     * Deletes every generation except {@code current}, including the partitions of older generations.
+     */
+    public void deleteOldGenerations(IndexCoordinates current) {
+        List<IndexInformation> generations = elasticsearchOperations.indexOps(IndexCoordinates.of(ALIAS + "-*"))
+                .getInformation();
+        for (IndexInformation info : generations) {
+            String name = info.getName();
+            if (!name.equals(current.getIndexName()) && !name.startsWith(current.getIndexName() + "-")) {
+                elasticsearchOperations.indexOps(IndexCoordinates.of(name)).delete();
+                log.info("Deleted old index generation '{}'", name);
+            }
+        }
+    }
+
+    /**
+     * Deletes every generation and partition, which also removes the alias, so a single index named {@code courses}
+     * can take its place. Elasticsearch refuses to delete an index through an alias name.
+     */
+    public void deleteAllGenerations() {
+        for (IndexInformation info : elasticsearchOperations.indexOps(IndexCoordinates.of(ALIAS + "-*")).getInformation()) {
+            elasticsearchOperations.indexOps(IndexCoordinates.of(info.getName())).delete();
+            log.info("Deleted index generation '{}'", info.getName());
+        }
+        createdPartitions.clear();
+        servingPartitions = null;
+    }
+
+    /**
+     * Indices a search has to read. With monthly partitions and a start date that is a plain date or ISO-8601 instant,
+     * only the partitions of that month and later; courses without a session never match a start date. A start date
+     * past every partition reads only the newest one, where the date filter matches nothing. Everything else, including
+     * faceted searches whose session facet counts all months, reads the whole alias.
+     */
+    public IndexCoordinates searchIndex(SearchParameters p) {
+        IndexCoordinates alias = IndexCoordinates.of(ALIAS);
+        if (!partitioned || p.startDate() == null || p.facets()) {
+            return alias;
+        }
+        YearMonth from = parseMonth(p.startDate());
+        if (from == null) {
+            return alias;
+        }
+        List<String> partitions = servingPartitions();
+        if (partitions.isEmpty()) {
+            // The alias holds something other than partitions
+            return alias;
+        }
+        List<String> matching = new ArrayList<>();
+        String newest = partitions.get(0);
+        YearMonth newestMonth = null;
+        for (String partition : partitions) {
+            YearMonth month = partitionMonth(partition);
+            if (month != null && !month.isBefore(from)) {
+                matching.add(partition);
+            }
+            if (month != null && (newestMonth == null || month.isAfter(newestMonth))) {
+                newest = partition;
+                newestMonth = month;
+            }
+        }
+        // Still a real search, so the response has the usual shape and an exact total of zero
+        return IndexCoordinates.of(matching.isEmpty() ? new String[]{newest} : matching.toArray(String[]::new));
+    }
+
+    /**
+     * Live partition that {@code course} has to be written to, created with serving settings and added to the alias
+     * if the change feed brings the first course of a month.
+     */
+    public String writeIndexFor(CourseDocument course) {
+        List<String> serving = servingPartitions();
+        if (serving.isEmpty()) {
+            throw new IllegalStateException("Alias '" + ALIAS + "' does not point to a partitioned generation");
+        }
+        Matcher name = PARTITION_NAME.matcher(serving.get(0));
+        name.matches();
+        String partition = name.group(1) + "-" + partitionKey(course.getNextSessionDate());
+        if (!serving.contains(partition) && createdPartitions.add(partition)) {
+            IndexOperations indexOps = elasticsearchOperations.indexOps(IndexCoordinates.of(partition));
+            if (!indexOps.exists()) {
+                indexOps.create(indexOps.createSettings(CourseDocument.class), indexOps.createMapping(CourseDocument.class));
+            }
+            indexOps.alias(new AliasActions(new AliasAction.Add(
+                    AliasActionParameters.builder().withIndices(partition).withAliases(ALIAS).build())));
+            servingPartitions = null;
+            log.info("Added index partition '{}' to alias '{}'", partition, ALIAS);
+        }
+        return partition;
+    }
+
+    /**
+     * Deletes the serving partitions of months before {@code before}. Deleting an index removes it from the alias,
+     * so expired sessions disappear without a delete-by-query. Returns the deleted partitions.
+     */
+    public List<String> dropPartitionsBefore(YearMonth before) {
+        if (!partitioned) {
+            return List.of();
+        }
+        List<String> dropped = new ArrayList<>();
+        for (String partition : servingPartitions()) {
+            YearMonth month = partitionMonth(partition);
+            if (month != null && month.isBefore(before)) {
+                elasticsearchOperations.indexOps(IndexCoordinates.of(partition)).delete();
+                createdPartitions.remove(partition);
+                dropped.add(partition);
+                log.info("Dropped expired index partition '{}'", partition);
+            }
+        }
+        if (!dropped.isEmpty()) {
+            servingPartitions = null;
+        }
+        return dropped;
+    }
+
+    // Partitions behind the alias, sorted by name; empty if the alias holds any index that is not a partition
+    private List<String> servingPartitions() {
+        ServingPartitions cached = servingPartitions;
+        long now = System.nanoTime();
+        if (cached != null && now - cached.readAt() <= servingPartitionsTtlNanos) {
+            return cached.names();
+        }
+        List<String> aliased = new ArrayList<>(aliasedIndices());
+        boolean allPartitions = aliased.stream().allMatch(name -> PARTITION_NAME.matcher(name).matches());
+        aliased.sort(null);
+        List<String> partitions = allPartitions ? List.copyOf(aliased) : List.of();
+        servingPartitions = new ServingPartitions(partitions, now);
+        return partitions;
+    }
+
+    private static String partitionKey(String nextSessionDate) {
+        YearMonth month = nextSessionDate != null ? parseMonth(nextSessionDate) : null;
+        return month != null ? month.toString() : UNDATED;
+    }
+
+    // Month of a partition's name, or null for the undated partition and anything that is not a partition
+    static YearMonth partitionMonth(String partition) {
+        Matcher name = PARTITION_NAME.matcher(partition);
+        if (!name.matches() || UNDATED.equals(name.group(2))) {
+            return null;
+        }
+        return YearMonth.parse(name.group(2));
+    }
+
+    // Month of an ISO-8601 instant or date in UTC, or null for anything else such as date math
+    static YearMonth parseMonth(String date) {
+        try {
+            return YearMonth.from(Instant.parse(date).atZone(ZoneOffset.UTC));
+        } catch (DateTimeParseException e) {
+            try {
+                return YearMonth.from(LocalDate.parse(date));
+            } catch (DateTimeParseException notADate) {
+                return null;
+            }
+        }
+    }
+
+    private Set<String> aliasedIndices() {
+        return elasticsearchOperations.indexOps(IndexCoordinates.of(ALIAS)).getAliases(ALIAS).keySet();
+    }
+
+    private record ServingPartitions(List<String> names, long readAt) {
+    }
+}
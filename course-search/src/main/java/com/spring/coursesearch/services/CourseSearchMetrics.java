@@ -0,0 +1,196 @@
+package com.spring.coursesearch.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.data.elasticsearch.core.SearchHits;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Meters for the search, suggest and ingest paths. Search meters are tagged with the sort and the filter shape,
+ * i.e. which parameters were present, so slow query shapes can be told apart without per-value cardinality.
+ */
+@Service
+public class CourseSearchMetrics {
+
+    private final MeterRegistry registry;
+    private final AtomicLong ingestDocsPerSecond = new AtomicLong();
+
+    // Meters are looked up once per tag combination instead of rebuilt on every request
+    private final Map<String, SearchMeters> searchMeters = new ConcurrentHashMap<>();
+    private final Map<String, BackendMeters> backendMeters = new ConcurrentHashMap<>();
+    private final Map<String, Counter> fallbacks = new ConcurrentHashMap<>();
+    private final Map<String, Counter> staleAnswers = new ConcurrentHashMap<>();
+    private final Map<String, Timer> suggestLatency = new ConcurrentHashMap<>();
+
+    private final Timer multiSearchRoundTrip;
+    private final DistributionSummary multiSearchSize;
+    private final Counter suggestZeroResults;
+    private final Timer bulkLatency;
+    private final Counter ingestedDocuments;
+    private final Counter bulkFailures;
+    private final Counter syncApplied;
+    private final Counter syncStale;
+    private final Counter syncFailed;
+
+    public CourseSearchMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        Gauge.builder("course.ingest.throughput", ingestDocsPerSecond, AtomicLong::get)
+                .description("Documents per second indexed by the most recent catalog load")
+                .baseUnit("documents/s")
+                .register(registry);
+        multiSearchRoundTrip = Timer.builder("course.search.backend.msearch")
+                .publishPercentileHistogram()
+                .register(registry);
+        multiSearchSize = DistributionSummary.builder("course.search.msearch.size").register(registry);
+        suggestZeroResults = Counter.builder("course.suggest.zero.results").register(registry);
+        bulkLatency = Timer.builder("course.ingest.bulk.latency").register(registry);
+        ingestedDocuments = Counter.builder("course.ingest.documents").register(registry);
+        bulkFailures = Counter.builder("course.ingest.bulk.failures").register(registry);
+        syncApplied = Counter.builder("course.sync.changes").tag("outcome", "applied").register(registry);
+        syncStale = Counter.builder("course.sync.changes").tag("outcome", "stale").register(registry);
+        syncFailed = Counter.builder("course.sync.changes").tag("outcome", "failed").register(registry);
+    }
+
+    public Timer.Sample start() {
+        return Timer.start(registry);
+    }
+
+    /**
+     * End-to-end search latency as seen by the controller, including cache lookups.
+     */
+    public void recordSearch(Timer.Sample sample, SearchParameters parameters, String mode, SearchHits<?> searchHits) {
+        String shape = shape(parameters);
+        SearchMeters meters = searchMeters.computeIfAbsent(parameters.sort() + '|' + shape + '|' + mode,
+                key -> newSearchMeters(parameters.sort(), shape, mode));
+        sample.stop(meters.latency());
+        meters.hits().record(searchHits.getTotalHits());
+        if (searchHits.getTotalHits() == 0) {
+            meters.zeroResults().increment();
+        }
+    }
+
+    /**
+     * One backend search: the client-side round trip and the server-side {@code took} recorded separately.
+     * In-memory searches are recorded under a {@code memory-} operation.
+     */
+    public void recordBackend(String operation, SearchParameters parameters, SearchHits<?> searchHits,
+                              long roundTripNanos) {
+        String sort = parameters != null ? parameters.sort() : "none";
+        String shape = parameters != null ? shape(parameters) : "none";
+        BackendMeters meters = backendMeters.computeIfAbsent(operation + '|' + sort + '|' + shape,
+                key -> newBackendMeters(operation, sort, shape));
+        meters.roundTrip().record(roundTripNanos, TimeUnit.NANOSECONDS);
+        if (searchHits.getExecutionDuration() != null) {
+            meters.took().record(searchHits.getExecutionDuration());
+        }
+    }
+
+    public void recordMultiSearch(int searches, long roundTripNanos) {
+        multiSearchRoundTrip.record(roundTripNanos, TimeUnit.NANOSECONDS);
+        multiSearchSize.record(searches);
+    }
+
+    /**
+     * An Elasticsearch call that failed and was answered from the in-memory index instead.
+     */
+    public void recordFallback(String operation) {
+        fallbacks.computeIfAbsent(operation, key -> Counter.builder("course.search.backend.fallback")
+                .tag("operation", operation)
+                .register(registry)).increment();
+    }
+
+    /**
+     * A search answered from the stale result cache because the backend could not answer.
+     */
+    public void recordStale(String operation) {
+        staleAnswers.computeIfAbsent(operation, key -> Counter.builder("course.search.stale")
+                .tag("operation", operation)
+                .register(registry)).increment();
+    }
+
+    public void recordSuggest(Timer.Sample sample, String source, int suggestions) {
+        sample.stop(suggestLatency.computeIfAbsent(source, key -> Timer.builder("course.suggest.latency")
+                .tags("source", source)
+                .publishPercentileHistogram()
+                .register(registry)));
+        if (suggestions == 0) {
+            suggestZeroResults.increment();
+        }
+    }
+
+    public void recordBulk(long nanos, int documents, int failures) {
+        bulkLatency.record(nanos, TimeUnit.NANOSECONDS);
+        ingestedDocuments.increment(documents - failures);
+        if (failures > 0) {
+            bulkFailures.increment(failures);
+        }
+    }
+
+    public void recordIngest(DataLoaderService.IngestReport report) {
+        ingestDocsPerSecond.set(report.indexed() * 1000 / Math.max(1, report.tookMillis()));
+    }
+
+    public void recordSync(CatalogSyncService.SyncReport report) {
+        syncApplied.increment(report.applied());
+        syncStale.increment(report.stale());
+        syncFailed.increment(report.failed());
+    }
+
+    // e.g. "text+age+category"; "none" for an unfiltered listing
+    static String shape(SearchParameters p) {
+        StringBuilder shape = new StringBuilder();
+        append(shape, p.query() != null, "text");
+        append(shape, p.minAge() != null || p.maxAge() != null, "age");
+        append(shape, p.minPrice() != null || p.maxPrice() != null, "price");
+        append(shape, p.category() != null, "category");
+        append(shape, p.type() != null, "type");
+        append(shape, p.startDate() != null, "date");
+        return shape.isEmpty() ? "none" : shape.toString();
+    }
+
+    private static void append(StringBuilder shape, boolean present, String name) {
+        if (present) {
+            shape.append(shape.isEmpty() ? "" : "+").append(name);
+        }
+    }
+
+    private SearchMeters newSearchMeters(String sort, String shape, String mode) {
+        return new SearchMeters(
+                Timer.builder("course.search.latency")
+                        .tags("sort", sort, "shape", shape, "mode", mode)
+                        .publishPercentileHistogram()
+                        .register(registry),
+                DistributionSummary.builder("course.search.hits")
+                        .tags("sort", sort, "shape", shape, "mode", mode)
+                        .register(registry),
+                Counter.builder("course.search.zero.results")
+                        .tags("sort", sort, "shape", shape, "mode", mode)
+                        .register(registry));
+    }
+
+    private BackendMeters newBackendMeters(String operation, String sort, String shape) {
+        return new BackendMeters(
+                Timer.builder("course.search.backend.roundtrip")
+                        .tags("operation", operation, "sort", sort, "shape", shape)
+                        .publishPercentileHistogram()
+                        .register(registry),
+                Timer.builder("course.search.backend.took")
+                        .tags("operation", operation, "sort", sort, "shape", shape)
+                        .publishPercentileHistogram()
+                        .register(registry));
+    }
+
+    private record SearchMeters(Timer latency, DistributionSummary hits, Counter zeroResults) {
+    }
+
+    private record BackendMeters(Timer roundTrip, Timer took) {
+    }
+}
@@ -1,93 +1,588 @@
 package com.spring.coursesearch.services;
 
 import com.spring.coursesearch.entity.CourseDocument;
+import com.spring.coursesearch.entity.CourseSummaryProjection;
+import co.elastic.clients.elasticsearch._types.Time;
+import co.elastic.clients.elasticsearch._types.aggregations.Aggregate;
+import co.elastic.clients.elasticsearch._types.aggregations.Aggregation;
+import co.elastic.clients.elasticsearch._types.aggregations.CalendarInterval;
+import co.elastic.clients.elasticsearch._types.query_dsl.BoolQuery;
+import co.elastic.clients.elasticsearch._types.query_dsl.FunctionBoostMode;
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+import co.elastic.clients.elasticsearch.core.search.Suggester;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.elasticsearch.client.elc.ElasticsearchAggregation;
+import org.springframework.data.elasticsearch.client.elc.ElasticsearchAggregations;
+import org.springframework.data.elasticsearch.client.elc.NativeQuery;
+import org.springframework.data.elasticsearch.client.elc.NativeQueryBuilder;
 import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.SearchHit;
 import org.springframework.data.elasticsearch.core.SearchHits;
-import org.springframework.data.elasticsearch.core.query.Criteria;
-import org.springframework.data.elasticsearch.core.query.CriteriaQuery;
+import org.springframework.data.elasticsearch.core.SearchHitsIterator;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.data.elasticsearch.core.query.FetchSourceFilter;
+import org.springframework.data.elasticsearch.core.query.Query.PointInTime;
+import org.springframework.data.elasticsearch.core.suggest.response.Suggest;
+import org.springframework.data.util.StreamUtils;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+@Slf4j
 @Service
 public class CourseSearchService {
 
+    // Prefix length from which the completion suggester starts allowing edits
+    static final int FUZZY_MIN_LENGTH = 3;
+
+    // Bounds the term expansion of the fuzzy title query
+    private static final int TITLE_FUZZY_PREFIX_LENGTH = 1;
+    private static final int TITLE_FUZZY_MAX_EXPANSIONS = 20;
+
+    // Relevance sort: (text score + popularity / (popularity + pivot)) * gauss decay on the next session date,
+    // which halves the score for sessions 30 days away
+    static final double RELEVANCE_POPULARITY_PIVOT = 100;
+    static final Duration RELEVANCE_DECAY_SCALE = Duration.ofDays(30);
+    static final double RELEVANCE_DECAY = 0.5;
+
+    private static final String TITLE_SUGGESTION = "title-suggest";
+
+    // Source fields needed to render a course summary
+    private static final String[] SUMMARY_FIELDS = {"id", "title", "category", "price", "nextSessionDate"};
+
+    // Filter dimensions; a facet is computed under every filter except those of its own dimension
+    private static final String DIMENSION_AGE = "age";
+    private static final String DIMENSION_PRICE = "price";
+    private static final String DIMENSION_CATEGORY = "category";
+    private static final String DIMENSION_TYPE = "type";
+    private static final String DIMENSION_NEXT_SESSION = "nextSessionDate";
+
+    // Sub-aggregation holding the buckets inside each facet's filter aggregation
+    private static final String FACET_BUCKETS = "buckets";
+
     private final ElasticsearchOperations elasticsearchOperations;
+    private final SearchResultCache searchResultCache;
+    private final CourseSearchMetrics metrics;
+    private final InMemorySearchBackend memoryBackend;
+    private final ElasticsearchGuard guard;
+    private final CourseIndexManager courseIndexManager;
+    private final IndexCoordinates courseIndex;
+
+    @Value("${course-search.suggest.size:10}")
+    private int suggestSize = 10;
+
+    @Value("${course-search.suggest.fuzzy:true}")
+    private boolean suggestFuzzy = true;
+
+    // How long an idle point-in-time stays open between cursor pages
+    @Value("${course-search.search.cursor.keep-alive:1m}")
+    private Duration cursorKeepAlive = Duration.ofMinutes(1);
+
+    // Hits fetched per scroll round trip when streaming exports
+    @Value("${course-search.search.export.batch-size:1000}")
+    private int exportBatchSize = 1000;
 
     @Autowired
-    public CourseSearchService(ElasticsearchOperations elasticsearchOperations) {
+    public CourseSearchService(ElasticsearchOperations elasticsearchOperations, SearchResultCache searchResultCache,
+                               CourseSearchMetrics metrics, InMemorySearchBackend memoryBackend,
+                               ElasticsearchGuard guard, CourseIndexManager courseIndexManager) {
         this.elasticsearchOperations = elasticsearchOperations;
+        this.searchResultCache = searchResultCache;
+        this.metrics = metrics;
+        this.memoryBackend = memoryBackend;
+        this.guard = guard;
+        this.courseIndexManager = courseIndexManager;
+        this.courseIndex = elasticsearchOperations.getIndexCoordinatesFor(CourseDocument.class);
     }
 
-    public SearchHits<CourseDocument> searchCourses(String query, Integer minAge, Integer maxAge, String category,
+    public SearchHits<CourseSummaryProjection> searchCourses(String query, Integer minAge, Integer maxAge, String category,
                                                     String type, Double minPrice, Double maxPrice, String startDate,
                                                     String sort, int page, int size) {
-        Criteria criteria = new Criteria();
+        return searchCourses(SearchParameters.of(
+                query, minAge, maxAge, category, type, minPrice, maxPrice, startDate, sort, page, size));
+    }
 
-        // Full-text search on title and description with fuzziness on title
-        if (query != null && !query.isEmpty()) {
-            Criteria titleCriteria = new Criteria("title").fuzzy(query); // Enable fuzzy matching
-            Criteria descCriteria = new Criteria("description").matches(query); // Standard match for description
-            criteria = titleCriteria.or(descCriteria); // Combine both criteria
+    public SearchHits<CourseSummaryProjection> searchCourses(SearchParameters parameters) {
+        try {
+            return searchResultCache.get(parameters, this::executeSearch);
+        } catch (DataAccessException e) {
+            // Failing, shedding or over budget: an outdated answer beats none while the backend recovers
+            SearchHits<CourseSummaryProjection> stale = searchResultCache.getStale(parameters);
+            if (stale == null) {
+                throw e;
+            }
+            log.debug("Search failed, answering with a stale result", e);
+            metrics.recordStale("search");
+            return stale;
         }
+    }
+
+    /**
+     * Returns the page following {@code cursor} (or the first page when it is null) using {@code search_after},
+     * so every page costs the same regardless of depth. With {@code pointInTime} the walk is pinned to a
+     * point-in-time view that is closed once the last page has been returned. The in-memory backend has no point in
+     * time, so there every page reads the index loaded when it is requested.
+     */
+    public CursorPage searchCoursesAfter(SearchParameters parameters, SearchCursor cursor, boolean pointInTime) {
+        if (cursor != null && !cursor.sort().equals(parameters.sort())) {
+            throw new IllegalArgumentException("Cursor was issued for sort '" + cursor.sort() + "'");
+        }
+        if (cursor != null && !cursor.matches(parameters)) {
+            throw new IllegalArgumentException("Cursor was issued for a different query or filters");
+        }
+
+        // The relevance decay is computed from the time of the first page, so _score, and with it every
+        // search_after position, stays the same across pages
+        String relevanceOrigin = !SearchParameters.SORT_RELEVANCE.equals(parameters.sort()) ? null
+                : cursor != null ? cursor.relevanceOrigin()
+                : Instant.now().truncatedTo(ChronoUnit.SECONDS).toString();
+        return switch (memoryBackend.getMode()) {
+            case ELASTICSEARCH -> searchElasticsearchAfter(parameters, cursor, pointInTime, relevanceOrigin);
+            case MEMORY -> searchInMemoryAfter(parameters, cursor, relevanceOrigin);
+            case FALLBACK -> withFallback("cursor",
+                    () -> searchElasticsearchAfter(parameters, cursor, pointInTime, relevanceOrigin),
+                    () -> searchInMemoryAfter(parameters, cursor, relevanceOrigin));
+        };
+    }
+
+    private CursorPage searchElasticsearchAfter(SearchParameters parameters, SearchCursor cursor, boolean pointInTime,
+                                                String relevanceOrigin) {
+        NativeQuery query = buildSearchQuery(parameters.withPaging(0, parameters.size()), relevanceOrigin);
+        List<Object> searchAfter = cursor != null ? cursor.searchAfter() : null;
+        String cursorPitId = cursor != null ? cursor.pointInTimeId() : null;
+        if (searchAfter != null) {
+            query.setSearchAfter(searchAfter);
+        }
+        // A page opening a point in time gets its own key, so concurrent first pages never share one
+        boolean openPointInTime = pointInTime && cursorPitId == null;
+        Object key = openPointInTime ? new Object()
+                : Arrays.asList(parameters, relevanceOrigin, cursorPitId, searchAfter);
+
+        SearchHits<CourseSummaryProjection> searchHits = guard.call("cursor", key, () -> {
+            if (openPointInTime || cursorPitId != null) {
+                String pitId = openPointInTime
+                        ? elasticsearchOperations.openPointInTime(indexFor(parameters), cursorKeepAlive) : cursorPitId;
+                query.setPointInTime(new PointInTime(pitId, cursorKeepAlive));
+            }
+            long start = System.nanoTime();
+            SearchHits<CourseSummaryProjection> hits =
+                    elasticsearchOperations.search(query, CourseSummaryProjection.class, indexFor(parameters));
+            metrics.recordBackend("cursor", parameters, hits, System.nanoTime() - start);
+            return hits;
+        });
+        String pitId = searchHits.getPointInTimeId();
+        if (searchHits.getSearchHits().size() < parameters.size()) {
+            if (pitId != null) {
+                elasticsearchOperations.closePointInTime(pitId);
+            }
+            return new CursorPage(searchHits, null);
+        }
+
+        List<Object> lastSortValues = searchHits.getSearchHit(searchHits.getSearchHits().size() - 1).getSortValues();
+        return new CursorPage(searchHits, SearchCursor.after(parameters, lastSortValues, pitId, relevanceOrigin));
+    }
+
+    // A point in time in the cursor is ignored, e.g. when fallback mode continues an Elasticsearch walk
+    private CursorPage searchInMemoryAfter(SearchParameters parameters, SearchCursor cursor, String relevanceOrigin) {
+        long origin = relevanceOrigin != null ? Instant.parse(relevanceOrigin).toEpochMilli()
+                : System.currentTimeMillis();
+        long start = System.nanoTime();
+        SearchHits<CourseSummaryProjection> searchHits =
+                memoryBackend.searchAfter(parameters, cursor != null ? cursor.searchAfter() : null, origin);
+        metrics.recordBackend("memory-cursor", parameters, searchHits, System.nanoTime() - start);
+        if (searchHits.getSearchHits().size() < parameters.size()) {
+            return new CursorPage(searchHits, null);
+        }
+        List<Object> lastSortValues = searchHits.getSearchHit(searchHits.getSearchHits().size() - 1).getSortValues();
+        return new CursorPage(searchHits, SearchCursor.after(parameters, lastSortValues, null, relevanceOrigin));
+    }
+
+    /**
+     * Streams every course matching {@code parameters} from the selected backend, through a scroll on Elasticsearch.
+     * The page and size of {@code parameters} are ignored; the caller must close the stream.
+     * In fallback mode only opening the stream falls back, a scroll failing midway ends the stream with the error.
+     */
+    public Stream<SearchHit<CourseSummaryProjection>> streamCourses(SearchParameters parameters) {
+        return switch (memoryBackend.getMode()) {
+            case ELASTICSEARCH -> streamElasticsearch(parameters);
+            case MEMORY -> memoryBackend.stream(parameters);
+            case FALLBACK -> withFallback("export", () -> streamElasticsearch(parameters),
+                    () -> memoryBackend.stream(parameters));
+        };
+    }
+
+    // The guard admits the first scroll page; every export gets its own key so concurrent exports never share a scroll.
+    // Later pages are read as the response is written and are not guarded: the scroll already holds a search context
+    // on the cluster, and shedding or timing out a page midway would cut the export short after it began streaming.
+    private Stream<SearchHit<CourseSummaryProjection>> streamElasticsearch(SearchParameters p) {
+        NativeQuery query = buildSearchQuery(p.withPaging(0, exportBatchSize));
+        SearchHitsIterator<CourseSummaryProjection> hits = guard.call("export", new Object(), () ->
+                elasticsearchOperations.searchForStream(query, CourseSummaryProjection.class, indexFor(p)));
+        return StreamUtils.createStreamFromIterator(hits);
+    }
+
+    /**
+     * Runs several searches as one {@code _msearch} round trip and returns their results in request order.
+     * Searches already in the result cache are answered from it and left out of the request.
+     */
+    public List<SearchHits<CourseSummaryProjection>> searchCoursesBatch(List<SearchParameters> batch) {
+        List<SearchHits<CourseSummaryProjection>> results = new ArrayList<>(batch.size());
+        List<Integer> missing = new ArrayList<>();
+        List<SearchParameters> uncached = new ArrayList<>();
+        for (SearchParameters parameters : batch) {
+            SearchHits<CourseSummaryProjection> cached = searchResultCache.getIfPresent(parameters);
+            if (cached == null) {
+                missing.add(results.size());
+                uncached.add(parameters);
+            }
+            results.add(cached);
+        }
+
+        if (!uncached.isEmpty()) {
+            List<SearchHits<CourseSummaryProjection>> searched = switch (memoryBackend.getMode()) {
+                case ELASTICSEARCH -> multiSearchElasticsearch(uncached);
+                case MEMORY -> uncached.stream().map(this::searchInMemory).collect(Collectors.toList());
+                case FALLBACK -> withFallback("msearch", () -> multiSearchElasticsearch(uncached),
+                        () -> uncached.stream().map(this::searchInMemory).collect(Collectors.toList()));
+            };
+            for (int i = 0; i < searched.size(); i++) {
+                int position = missing.get(i);
+                results.set(position, searched.get(i));
+                searchResultCache.put(batch.get(position), searched.get(i));
+            }
+        }
+        return results;
+    }
+
+    private List<SearchHits<CourseSummaryProjection>> multiSearchElasticsearch(List<SearchParameters> batch) {
+        List<NativeQuery> queries = batch.stream().map(this::buildSearchQuery).collect(Collectors.toList());
+        return guard.call("msearch", batch, () -> {
+            long start = System.nanoTime();
+            List<SearchHits<CourseSummaryProjection>> searched = courseIndexManager.isPartitioned()
+                    ? multiSearchPartitions(batch, queries)
+                    : elasticsearchOperations.multiSearch(queries, CourseSummaryProjection.class, courseIndex);
+            metrics.recordMultiSearch(queries.size(), System.nanoTime() - start);
+            return searched;
+        });
+    }
+
+    // Each search of the batch only reads its own partitions
+    @SuppressWarnings("unchecked")
+    private List<SearchHits<CourseSummaryProjection>> multiSearchPartitions(List<SearchParameters> batch,
+                                                                           List<NativeQuery> queries) {
+        List<Class<?>> classes = Collections.nCopies(queries.size(), CourseSummaryProjection.class);
+        List<IndexCoordinates> indices = batch.stream().map(this::indexFor).collect(Collectors.toList());
+        return elasticsearchOperations.multiSearch(queries, classes, indices).stream()
+                .map(hits -> (SearchHits<CourseSummaryProjection>) hits)
+                .collect(Collectors.toList());
+    }
+
+    // With monthly partitions, a search with a start date skips the months before it
+    private IndexCoordinates indexFor(SearchParameters p) {
+        return courseIndexManager.isPartitioned() ? courseIndexManager.searchIndex(p) : courseIndex;
+    }
+
+    private SearchHits<CourseSummaryProjection> executeSearch(SearchParameters p) {
+        return switch (memoryBackend.getMode()) {
+            case ELASTICSEARCH -> searchElasticsearch(p);
+            case MEMORY -> searchInMemory(p);
+            case FALLBACK -> withFallback("search", () -> searchElasticsearch(p), () -> searchInMemory(p));
+        };
+    }
+
+    private SearchHits<CourseSummaryProjection> searchInMemory(SearchParameters p) {
+        long start = System.nanoTime();
+        SearchHits<CourseSummaryProjection> searchHits = memoryBackend.search(p);
+        metrics.recordBackend("memory-search", p, searchHits, System.nanoTime() - start);
+        return searchHits;
+    }
+
+    // Degraded mode: a failed Elasticsearch call is answered from the in-memory index when one is loaded
+    private <T> T withFallback(String operation, Supplier<T> elasticsearch, Supplier<T> inMemory) {
+        try {
+            return elasticsearch.get();
+        } catch (DataAccessException e) {
+            if (!memoryBackend.isLoaded()) {
+                throw e;
+            }
+            log.debug("Elasticsearch {} failed, answering from the in-memory index", operation, e);
+            metrics.recordFallback(operation);
+            return inMemory.get();
+        }
+    }
+
+    private SearchHits<CourseSummaryProjection> searchElasticsearch(SearchParameters p) {
+        NativeQuery query = buildSearchQuery(p);
+        return guard.call("search", p, () -> {
+            long start = System.nanoTime();
+            SearchHits<CourseSummaryProjection> searchHits =
+                    elasticsearchOperations.search(query, CourseSummaryProjection.class, indexFor(p));
+            metrics.recordBackend("search", p, searchHits, System.nanoTime() - start);
+            return searchHits;
+        });
+    }
+
+    /**
+     * Builds a bool query with text matching in scoring context and every structured constraint in filter context,
+     * so repeated filter combinations are served from Elasticsearch's filter cache. Only the summary fields are fetched.
+     * With facets the constraints move to {@code post_filter}, and each facet is computed under every constraint
+     * except its own, so a selected category still shows the counts of the other categories.
+     */
+    public NativeQuery buildSearchQuery(SearchParameters p) {
+        return buildSearchQuery(p, null);
+    }
+
+    // relevanceOrigin is the instant the date decay is centred on, null for now
+    private NativeQuery buildSearchQuery(SearchParameters p, String relevanceOrigin) {
+        BoolQuery.Builder bool = new BoolQuery.Builder();
+
+        // Full-text search on title and description. Fuzzy title terms must share the first character and expand
+        // to at most 20 terms; prefixes are term lookups on the title edge n-grams and the description index_prefixes
+        if (p.query() != null) {
+            bool.should(s -> s.match(m -> m.field("title").query(p.query())
+                    .fuzziness("AUTO").prefixLength(TITLE_FUZZY_PREFIX_LENGTH).maxExpansions(TITLE_FUZZY_MAX_EXPANSIONS)));
+            bool.should(s -> s.match(m -> m.field("title.prefix").query(p.query())));
+            bool.should(s -> s.matchBoolPrefix(m -> m.field("description").query(p.query())));
+            bool.minimumShouldMatch("1");
+        }
+
+        List<FilterClause> filters = new ArrayList<>();
 
         // Range filters
-        if (minAge != null) {
-            criteria = criteria.and(new Criteria("minAge").greaterThanEqual(minAge));
+        if (p.minAge() != null) {
+            filters.add(new FilterClause(DIMENSION_AGE, Query.of(f -> f.range(r -> r.number(
+                    n -> n.field("minAge").gte(p.minAge().doubleValue()))))));
         }
-        if (maxAge != null) {
-            criteria = criteria.and(new Criteria("maxAge").lessThanEqual(maxAge));
+        if (p.maxAge() != null) {
+            filters.add(new FilterClause(DIMENSION_AGE, Query.of(f -> f.range(r -> r.number(
+                    n -> n.field("maxAge").lte(p.maxAge().doubleValue()))))));
         }
-        if (minPrice != null) {
-            criteria = criteria.and(new Criteria("price").greaterThanEqual(minPrice));
+        if (p.minPrice() != null) {
+            filters.add(new FilterClause(DIMENSION_PRICE, Query.of(f -> f.range(r -> r.number(
+                    n -> n.field("price").gte(p.minPrice()))))));
         }
-        if (maxPrice != null) {
-            criteria = criteria.and(new Criteria("price").lessThanEqual(maxPrice));
+        if (p.maxPrice() != null) {
+            filters.add(new FilterClause(DIMENSION_PRICE, Query.of(f -> f.range(r -> r.number(
+                    n -> n.field("price").lte(p.maxPrice()))))));
         }
 
         // Exact filters
-        if (category != null && !category.isEmpty()) {
-            criteria = criteria.and(new Criteria("category").is(category));
+        if (p.category() != null) {
+            filters.add(new FilterClause(DIMENSION_CATEGORY, Query.of(f -> f.term(
+                    t -> t.field("category").value(p.category())))));
         }
-        if (type != null && !type.isEmpty()) {
-            criteria = criteria.and(new Criteria("type").is(type));
+        if (p.type() != null) {
+            filters.add(new FilterClause(DIMENSION_TYPE, Query.of(f -> f.term(t -> t.field("type").value(p.type())))));
         }
 
         // Date filter
-        if (startDate != null && !startDate.isEmpty()) {
-            criteria = criteria.and(new Criteria("nextSessionDate").greaterThanEqual(startDate));
+        if (p.startDate() != null) {
+            filters.add(new FilterClause(DIMENSION_NEXT_SESSION, Query.of(f -> f.range(r -> r.date(
+                    d -> d.field("nextSessionDate").gte(p.startDate()))))));
+        }
+
+        NativeQueryBuilder builder = NativeQuery.builder();
+        if (p.facets()) {
+            if (!filters.isEmpty()) {
+                builder.withFilter(Query.of(q -> q.bool(b -> b.filter(filterQueries(filters, null)))));
+            }
+            facetAggregations(filters).forEach(builder::withAggregation);
+        } else {
+            bool.filter(filterQueries(filters, null));
         }
 
         // Sorting
         Sort sortBy;
-        if ("priceAsc".equalsIgnoreCase(sort)) {
+        if (SearchParameters.SORT_PRICE_ASC.equals(p.sort())) {
             sortBy = Sort.by(Sort.Direction.ASC, "price");
-        } else if ("priceDesc".equalsIgnoreCase(sort)) {
+        } else if (SearchParameters.SORT_PRICE_DESC.equals(p.sort())) {
             sortBy = Sort.by(Sort.Direction.DESC, "price");
+        } else if (SearchParameters.SORT_TITLE.equals(p.sort())) {
+            sortBy = Sort.by(Sort.Direction.ASC, "title.keyword");
+        } else if (SearchParameters.SORT_RELEVANCE.equals(p.sort())) {
+            sortBy = Sort.by(Sort.Direction.DESC, "_score");
         } else {
             sortBy = Sort.by(Sort.Direction.ASC, "nextSessionDate");
         }
+        // Unique tiebreaker so that search_after positions are unambiguous
+        sortBy = sortBy.and(Sort.by(Sort.Direction.ASC, "id"));
+
+        Query query = Query.of(q -> q.bool(bool.build()));
+        if (SearchParameters.SORT_RELEVANCE.equals(p.sort())) {
+            query = relevanceQuery(query, relevanceOrigin != null ? relevanceOrigin : "now");
+        }
+
+        return builder
+                .withQuery(query)
+                .withPageable(PageRequest.of(p.page(), p.size()))
+                .withSort(sortBy)
+                .withSourceFilter(new FetchSourceFilter(true, SUMMARY_FIELDS, null))
+                .build();
+    }
+
+    // Both signals are cheap per hit: popularity is a rank feature stored at index time, the decay reads doc values
+    private static Query relevanceQuery(Query matching, String origin) {
+        return Query.of(q -> q.functionScore(fs -> fs
+                .query(b -> b.bool(o -> o
+                        .must(matching)
+                        .should(s -> s.rankFeature(r -> r.field("popularity")
+                                .saturation(sat -> sat.pivot((float) RELEVANCE_POPULARITY_PIVOT))))))
+                .functions(f -> f.gauss(g -> g.date(d -> d.field("nextSessionDate").placement(pl -> pl
+                        .origin(origin)
+                        .scale(Time.of(t -> t.time(RELEVANCE_DECAY_SCALE.toDays() + "d")))
+                        .decay(RELEVANCE_DECAY)))))
+                .boostMode(FunctionBoostMode.Multiply)));
+    }
+
+    /**
+     * Reads the facet buckets of a search built with {@code facets} enabled, keyed by facet name.
+     * Returns an empty map when the response carries no aggregations.
+     */
+    public Map<String, List<FacetBucket>> facets(SearchHits<?> searchHits) {
+        if (searchHits.getAggregations() instanceof InMemoryCourseIndex.Facets inMemory) {
+            return inMemory.aggregations();
+        }
+        Map<String, List<FacetBucket>> facets = new LinkedHashMap<>();
+        if (!(searchHits.getAggregations() instanceof ElasticsearchAggregations aggregations)) {
+            return facets;
+        }
+        for (ElasticsearchAggregation facet : aggregations.aggregations()) {
+            Aggregate buckets = facet.aggregation().getAggregate().filter().aggregations().get(FACET_BUCKETS);
+            facets.put(facet.aggregation().getName(), toBuckets(buckets));
+        }
+        return facets;
+    }
+
+    private static List<FacetBucket> toBuckets(Aggregate aggregate) {
+        List<FacetBucket> buckets = new ArrayList<>();
+        if (aggregate.isSterms()) {
+            aggregate.sterms().buckets().array().forEach(
+                    b -> buckets.add(new FacetBucket(b.key().stringValue(), b.docCount())));
+        } else if (aggregate.isHistogram()) {
+            aggregate.histogram().buckets().array().forEach(
+                    b -> buckets.add(new FacetBucket(formatNumber(b.key()), b.docCount())));
+        } else if (aggregate.isDateHistogram()) {
+            aggregate.dateHistogram().buckets().array().forEach(
+                    b -> buckets.add(new FacetBucket(b.keyAsString(), b.docCount())));
+        }
+        return buckets;
+    }
+
+    private static String formatNumber(double value) {
+        return value == Math.rint(value) ? String.valueOf((long) value) : String.valueOf(value);
+    }
+
+    private static List<Query> filterQueries(List<FilterClause> filters, String excludedDimension) {
+        List<Query> queries = new ArrayList<>(filters.size());
+        for (FilterClause filter : filters) {
+            if (!filter.dimension().equals(excludedDimension)) {
+                queries.add(filter.query());
+            }
+        }
+        return queries;
+    }
 
-        CriteriaQuery searchQuery = new CriteriaQuery(criteria, PageRequest.of(page, size)).addSort(sortBy);
+    // Each facet is a filter aggregation over all constraints but its own, wrapping the actual bucket aggregation
+    private static Map<String, Aggregation> facetAggregations(List<FilterClause> filters) {
+        Map<String, Aggregation> facets = new LinkedHashMap<>();
+        facets.put("category", facet(filters, DIMENSION_CATEGORY,
+                Aggregation.of(a -> a.terms(t -> t.field("category").size(50)))));
+        facets.put("type", facet(filters, DIMENSION_TYPE,
+                Aggregation.of(a -> a.terms(t -> t.field("type").size(10)))));
+        facets.put("gradeRange", facet(filters, null,
+                Aggregation.of(a -> a.terms(t -> t.field("gradeRange").size(20)))));
+        facets.put("price", facet(filters, DIMENSION_PRICE,
+                Aggregation.of(a -> a.histogram(h -> h.field("price").interval(25.0)))));
+        facets.put("minAge", facet(filters, DIMENSION_AGE,
+                Aggregation.of(a -> a.histogram(h -> h.field("minAge").interval(1.0)))));
+        facets.put("maxAge", facet(filters, DIMENSION_AGE,
+                Aggregation.of(a -> a.histogram(h -> h.field("maxAge").interval(1.0)))));
+        facets.put("nextSessionDate", facet(filters, DIMENSION_NEXT_SESSION,
+                Aggregation.of(a -> a.dateHistogram(d -> d.field("nextSessionDate")
+                        .calendarInterval(CalendarInterval.Month).format("yyyy-MM")))));
+        return facets;
+    }
 
-        return elasticsearchOperations.search(searchQuery, CourseDocument.class);
+    private static Aggregation facet(List<FilterClause> filters, String dimension, Aggregation buckets) {
+        List<Query> others = filterQueries(filters, dimension);
+        Query filter = others.isEmpty()
+                ? Query.of(q -> q.matchAll(m -> m))
+                : Query.of(q -> q.bool(b -> b.filter(others)));
+        return Aggregation.of(a -> a.filter(filter).aggregations(FACET_BUCKETS, buckets));
     }
 
-    public List<String> suggestTitles(String partialTitle) {
-        if (partialTitle == null || partialTitle.isEmpty()) {
+    /**
+     * Title suggestions for a prefix, together with the backend that answered, which in fallback mode depends on
+     * whether Elasticsearch did.
+     */
+    public Suggestions suggestTitles(String partialTitle) {
+        if (partialTitle == null || partialTitle.isBlank()) {
+            return new Suggestions(List.of(), "none");
+        }
+        return switch (memoryBackend.getMode()) {
+            case ELASTICSEARCH -> new Suggestions(suggestElasticsearch(partialTitle), "elasticsearch");
+            case MEMORY -> new Suggestions(memoryBackend.suggest(partialTitle, suggestSize), "memory");
+            case FALLBACK -> withFallback("suggest",
+                    () -> new Suggestions(suggestElasticsearch(partialTitle), "elasticsearch"),
+                    () -> new Suggestions(memoryBackend.suggest(partialTitle, suggestSize), "memory"));
+        };
+    }
+
+    private List<String> suggestElasticsearch(String partialTitle) {
+        String prefix = partialTitle.trim();
+
+        // Completion suggester on the FST-backed suggest field, fuzzy once the prefix is long enough to be worth it
+        Suggester suggester = Suggester.of(s -> s.suggesters(TITLE_SUGGESTION, f -> f
+                .prefix(prefix)
+                .completion(c -> {
+                    c.field("suggest").size(suggestSize).skipDuplicates(true);
+                    if (suggestFuzzy) {
+                        c.fuzzy(z -> z.fuzziness("AUTO").minLength(FUZZY_MIN_LENGTH).prefixLength(1));
+                    }
+                    return c;
+                })));
+        NativeQuery query = NativeQuery.builder()
+                .withSuggester(suggester)
+                .withMaxResults(0)
+                .build();
+
+        SearchHits<CourseDocument> searchHits = guard.call("suggest", prefix, () -> {
+            long start = System.nanoTime();
+            SearchHits<CourseDocument> hits = elasticsearchOperations.search(query, CourseDocument.class);
+            metrics.recordBackend("suggest", null, hits, System.nanoTime() - start);
+            return hits;
+        });
+        if (searchHits.getSuggest() == null || searchHits.getSuggest().getSuggestion(TITLE_SUGGESTION) == null) {
             return List.of();
         }
-        Criteria criteria = new Criteria("title").startsWith(partialTitle); // Prefix match for autocomplete
-        CriteriaQuery query = new CriteriaQuery(criteria, PageRequest.of(0, 10));
-        SearchHits<CourseDocument> searchHits = elasticsearchOperations.search(query, CourseDocument.class);
-        return searchHits.getSearchHits().stream()
-                .map(hit -> hit.getContent().getTitle())
-                .distinct() // Ensure no duplicates
+        return searchHits.getSuggest().getSuggestion(TITLE_SUGGESTION).getEntries().stream()
+                .flatMap(entry -> entry.getOptions().stream())
+                .map(Suggest.Suggestion.Entry.Option::getText) // skip_duplicates already collapses equal titles
                 .collect(Collectors.toList());
     }
-}
 
+    private record FilterClause(String dimension, Query query) {
+    }
+
+    public record Suggestions(List<String> titles, String source) {
+    }
+
+    public record CursorPage(SearchHits<CourseSummaryProjection> searchHits, SearchCursor nextCursor) {
+    }
+}
@@ -1,42 +1,319 @@
 package com.spring.coursesearch.services;
 
 import com.spring.coursesearch.entity.CourseDocument;
-import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import org.springframework.beans.factory.annotation.Autowired;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.event.EventListener;
 import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.Resource;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.elasticsearch.BulkFailureException;
+import org.springframework.data.elasticsearch.client.elc.NativeQuery;
 import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.IndexOperations;
+import org.springframework.data.elasticsearch.core.SearchHitsIterator;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.data.elasticsearch.core.query.IndexQuery;
+import org.springframework.data.elasticsearch.core.query.IndexQueryBuilder;
+import org.springframework.data.elasticsearch.core.suggest.Completion;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
+@Slf4j
 @Service
 public class DataLoaderService {
 
-    @Autowired
-    private ElasticsearchOperations elasticsearchTemplate;
+    private final ElasticsearchOperations elasticsearchTemplate;
+    private final ObjectMapper objectMapper;
+    private final CourseIndexManager courseIndexManager;
+    private final ApplicationEventPublisher eventPublisher;
+    private final CourseSearchMetrics metrics;
+    private final InMemorySearchBackend memoryBackend;
+    private final CatalogSyncService catalogSync;
 
-    @Autowired
-    private ObjectMapper objectMapper;
+    // "reindex" loads a new generation behind the alias, "recreate" drops and reloads the index in place,
+    // "sync" keeps an existing catalog and only applies the change feed, loading a new generation when there is none
+    @Value("${course-search.index.mode:reindex}")
+    private String indexMode = "reindex";
+
+    // JSON array of courses loaded on startup, e.g. file:/data/catalog.json for a generated load-test catalog
+    @Value("${course-search.ingest.catalog:classpath:sample-courses.json}")
+    private Resource catalog = new ClassPathResource("sample-courses.json");
+
+    // Flush a bulk request once either limit is reached
+    @Value("${course-search.ingest.batch-size:1000}")
+    private int batchSize = 1000;
+
+    @Value("${course-search.ingest.batch-bytes:5242880}")
+    private long batchBytes = 5_242_880;
+
+    // Number of bulk requests allowed in flight before the reader blocks
+    @Value("${course-search.ingest.max-in-flight:4}")
+    private int maxInFlight = 4;
+
+    public DataLoaderService(ElasticsearchOperations elasticsearchTemplate, ObjectMapper objectMapper,
+                             CourseIndexManager courseIndexManager, ApplicationEventPublisher eventPublisher,
+                             CourseSearchMetrics metrics, InMemorySearchBackend memoryBackend,
+                             CatalogSyncService catalogSync) {
+        this.elasticsearchTemplate = elasticsearchTemplate;
+        this.objectMapper = objectMapper;
+        this.courseIndexManager = courseIndexManager;
+        this.eventPublisher = eventPublisher;
+        this.metrics = metrics;
+        this.memoryBackend = memoryBackend;
+        this.catalogSync = catalogSync;
+    }
 
     @EventListener(ApplicationReadyEvent.class)
     public void loadSampleData() throws IOException {
+        // The in-memory index is filled from the same stream as the Elasticsearch bulk requests
+        InMemoryCourseIndex.Builder memoryIndex = memoryBackend.isEnabled() ? InMemoryCourseIndex.builder() : null;
+
+        if (memoryBackend.getMode() == InMemorySearchBackend.Mode.MEMORY) {
+            IngestReport report = ingestSampleData(null, null, memoryIndex);
+            publish(report, InMemorySearchBackend.INDEX_NAME, memoryIndex);
+            catalogSync.start(true);
+            return;
+        }
+        if ("sync".equalsIgnoreCase(indexMode) && courseIndexManager.catalogExists()) {
+            resumeCatalog(memoryIndex);
+            return;
+        }
+        if ("recreate".equalsIgnoreCase(indexMode)) {
+            recreateIndex(memoryIndex);
+            catalogSync.start(true);
+            return;
+        }
+
+        // Build a fresh generation and only swap the alias once it is fully loaded
+        IndexCoordinates generation = courseIndexManager.createGeneration();
+        Function<CourseDocument, String> partitioner = courseIndexManager.isPartitioned()
+                ? course -> courseIndexManager.partitionFor(generation, course) : null;
+        IngestReport report = ingestSampleData(generation, partitioner, memoryIndex);
+        courseIndexManager.promote(generation);
+        courseIndexManager.deleteOldGenerations(generation);
+
+        publish(report, generation.getIndexName(), memoryIndex);
+        catalogSync.start(true);
+    }
 
-        // Delete and recreate the index to ensure a clean state
-        elasticsearchTemplate.indexOps(CourseDocument.class).delete();
-        elasticsearchTemplate.indexOps(CourseDocument.class).create();
+    // Restart against a catalog that is already indexed: nothing is reindexed, only the changes since the checkpoint
+    private void resumeCatalog(InMemoryCourseIndex.Builder memoryIndex) throws IOException {
+        long start = System.currentTimeMillis();
+        long courses = 0;
+        if (memoryIndex != null) {
+            NativeQuery query = NativeQuery.builder()
+                    .withQuery(q -> q.matchAll(m -> m))
+                    .withPageable(PageRequest.of(0, batchSize))
+                    .build();
+            try (SearchHitsIterator<CourseDocument> hits = elasticsearchTemplate.searchForStream(
+                    query, CourseDocument.class, IndexCoordinates.of(CourseIndexManager.ALIAS))) {
+                while (hits.hasNext()) {
+                    memoryIndex.add(hits.next().getContent());
+                    courses++;
+                }
+            }
+            memoryBackend.publish(memoryIndex.build());
+        }
+        log.info("Resumed catalog '{}' without reloading it in {} ms", CourseIndexManager.ALIAS,
+                System.currentTimeMillis() - start);
 
-        // Read sample-courses.json
-        ClassPathResource resource = new ClassPathResource("sample-courses.json");
-        List<CourseDocument> courses = objectMapper.readValue(resource.getInputStream(), new TypeReference<>() {});
+        eventPublisher.publishEvent(new CatalogReloadedEvent(CourseIndexManager.ALIAS, courses));
+        catalogSync.start(false);
+    }
+
+    private void recreateIndex(InMemoryCourseIndex.Builder memoryIndex) throws IOException {
+        // Delete and recreate the index to ensure a clean state; after a reindex "courses" is an alias to drop first
+        courseIndexManager.deleteAllGenerations();
+        IndexOperations indexOps = elasticsearchTemplate.indexOps(CourseDocument.class);
+        indexOps.delete();
+        indexOps.create();
+        indexOps.putMapping();
+
+        IngestReport report = ingestSampleData(indexOps.getIndexCoordinates(), null, memoryIndex);
+        indexOps.refresh();
+
+        publish(report, indexOps.getIndexCoordinates().getIndexName(), memoryIndex);
+    }
+
+    private IngestReport ingestSampleData(IndexCoordinates index, Function<CourseDocument, String> partitioner,
+                                          InMemoryCourseIndex.Builder memoryIndex) throws IOException {
+        // Stream the catalog into bulk requests
+        try (InputStream in = catalog.getInputStream()) {
+            return ingest(in, index, memoryIndex != null ? memoryIndex::add : null, partitioner);
+        }
+    }
+
+    private void publish(IngestReport report, String indexName, InMemoryCourseIndex.Builder memoryIndex) {
+        metrics.recordIngest(report);
+        log.info("Indexed {} courses into '{}' in {} batches ({} failed) in {} ms",
+                report.indexed(), indexName, report.batches(), report.failed(), report.tookMillis());
+
+        if (memoryIndex != null) {
+            memoryBackend.publish(memoryIndex.build());
+        }
+        eventPublisher.publishEvent(new CatalogReloadedEvent(indexName, report.indexed()));
+    }
 
-        // Set suggest field to title for autocomplete
-        courses.forEach(course -> course.setSuggest(course.getTitle()));
+    /**
+     * Reads a JSON array of courses incrementally and indexes it through bounded, concurrent bulk requests.
+     * Only {@code maxInFlight} batches are held in memory at once, so heap use does not grow with the catalog.
+     */
+    public IngestReport ingest(InputStream in, IndexCoordinates index) throws IOException {
+        return ingest(in, index, null);
+    }
+
+    /**
+     * Like {@link #ingest(InputStream, IndexCoordinates)}, additionally passing every course to {@code listener}
+     * on the reading thread. With a null {@code index} nothing is sent to Elasticsearch.
+     */
+    public IngestReport ingest(InputStream in, IndexCoordinates index, Consumer<CourseDocument> listener)
+            throws IOException {
+        return ingest(in, index, listener, null);
+    }
+
+    /**
+     * Like {@link #ingest(InputStream, IndexCoordinates, Consumer)}, writing every course to the index named by
+     * {@code partitioner} instead of {@code index}, which then only names the load in logs.
+     */
+    public IngestReport ingest(InputStream in, IndexCoordinates index, Consumer<CourseDocument> listener,
+                               Function<CourseDocument, String> partitioner) throws IOException {
+        long start = System.currentTimeMillis();
+        AtomicLong indexed = new AtomicLong();
+        AtomicLong failed = new AtomicLong();
+        long batches = 0;
+
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        ExecutorService executor = Executors.newFixedThreadPool(maxInFlight);
+        try (JsonParser parser = objectMapper.createParser(in)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IOException("Expected a JSON array of courses");
+            }
+
+            List<IndexQuery> batch = new ArrayList<>();
+            long bytes = 0;
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                long offset = parser.currentTokenLocation().getByteOffset();
+                CourseDocument course = parser.readValueAs(CourseDocument.class);
+                bytes += parser.currentLocation().getByteOffset() - offset;
+
+                prepare(course);
+                if (listener != null) {
+                    listener.accept(course);
+                }
+                if (index == null) {
+                    indexed.incrementAndGet();
+                    continue;
+                }
+                IndexQueryBuilder indexQuery = new IndexQueryBuilder().withId(course.getId()).withObject(course);
+                if (partitioner != null) {
+                    indexQuery.withIndex(partitioner.apply(course));
+                }
+                batch.add(indexQuery.build());
+
+                if (batch.size() >= batchSize || bytes >= batchBytes) {
+                    submit(batch, index, executor, inFlight, indexed, failed);
+                    batches++;
+                    batch = new ArrayList<>();
+                    bytes = 0;
+                }
+            }
+            if (!batch.isEmpty()) {
+                submit(batch, index, executor, inFlight, indexed, failed);
+                batches++;
+            }
+
+            // Wait for the outstanding batches to drain
+            inFlight.acquire(maxInFlight);
+            inFlight.release(maxInFlight);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while indexing courses");
+        } finally {
+            executor.shutdownNow();
+        }
+
+        return new IngestReport(indexed.get(), failed.get(), batches, System.currentTimeMillis() - start);
+    }
+
+    // Index-time preparation shared by full loads and synced changes
+    static void prepare(CourseDocument course) {
+        // Set suggest field to title for autocomplete, ranked by how soon the next session starts
+        course.setSuggest(titleSuggestion(course.getTitle()));
+        if (course.getSuggest() != null) {
+            course.getSuggest().setWeight(suggestWeight(course, Instant.now()));
+        }
+        // Rank features only accept positive values; anything else is treated as no signal
+        if (course.getPopularity() != null && !(course.getPopularity() > 0 && Double.isFinite(course.getPopularity()))) {
+            course.setPopularity(null);
+        }
+    }
+
+    /**
+     * Completion input suggesting {@code title}, or null without a title.
+     */
+    public static Completion titleSuggestion(String title) {
+        return title != null ? new Completion(new String[]{title}) : null;
+    }
+
+    // Sessions starting within a year of now rank higher the sooner they start; everything else gets the base weight.
+    // Weights age, so CatalogSyncService recomputes them periodically
+    static int suggestWeight(CourseDocument course, Instant now) {
+        if (course.getNextSessionDate() == null) {
+            return 1;
+        }
+        try {
+            long days = Duration.between(now, Instant.parse(course.getNextSessionDate())).toDays();
+            return days >= 0 && days < 365 ? (int) (366 - days) : 1;
+        } catch (DateTimeParseException e) {
+            return 1;
+        }
+    }
+
+    private void submit(List<IndexQuery> batch, IndexCoordinates index, ExecutorService executor,
+                        Semaphore inFlight, AtomicLong indexed, AtomicLong failed) throws InterruptedException {
+        // Blocks the reader while maxInFlight batches are outstanding
+        inFlight.acquire();
+        executor.execute(() -> {
+            long start = System.nanoTime();
+            int failures = 0;
+            try {
+                elasticsearchTemplate.bulkIndex(batch, index);
+            } catch (BulkFailureException e) {
+                failures = e.getFailedDocuments().size();
+                log.warn("Bulk request to '{}' failed for {} of {} courses: {}",
+                        index.getIndexName(), failures, batch.size(), e.getFailedDocuments());
+            } catch (RuntimeException e) {
+                failures = batch.size();
+                log.warn("Bulk request of {} courses to '{}' failed", batch.size(), index.getIndexName(), e);
+            } finally {
+                indexed.addAndGet(batch.size() - failures);
+                failed.addAndGet(failures);
+                metrics.recordBulk(System.nanoTime() - start, batch.size(), failures);
+                inFlight.release();
+            }
+        });
+    }
 
-        // Bulk index
-        courses.forEach(course -> elasticsearchTemplate.save(course));
+    public record IngestReport(long indexed, long failed, long batches, long tookMillis) {
     }
-}
\ No newline at end of file
+}
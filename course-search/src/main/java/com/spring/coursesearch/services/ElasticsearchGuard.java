@@ -0,0 +1,163 @@
+package com.spring.coursesearch.services;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.data.elasticsearch.UncategorizedElasticsearchException;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Protective layer around the Elasticsearch calls on the request path. Identical concurrent calls share one
+ * execution, calls beyond an adaptive concurrency limit fail fast, and every caller waits at most its time budget.
+ * The budget is not sent as the Elasticsearch search timeout: a search cut short by it still answers, with partial
+ * hits that cannot be told apart from complete ones and would end up in the result cache. A call that outlives its
+ * budget keeps its slot until it really finishes, so the limit tracks actual backend load.
+ */
+@Slf4j
+@Service
+public class ElasticsearchGuard implements MeterBinder {
+
+    private final boolean enabled;
+    private final Duration timeout;
+    private final AdaptiveConcurrencyLimit limit;
+
+    private final Map<List<Object>, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder shed = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+
+    public ElasticsearchGuard(@Value("${course-search.search.guard.enabled:true}") boolean enabled,
+                              @Value("${course-search.search.guard.timeout:2s}") Duration timeout,
+                              @Value("${course-search.search.guard.initial-limit:20}") int initialLimit,
+                              @Value("${course-search.search.guard.min-limit:2}") int minLimit,
+                              @Value("${course-search.search.guard.max-limit:200}") int maxLimit,
+                              @Value("${course-search.search.guard.latency-threshold:500ms}") Duration latencyThreshold) {
+        this.enabled = enabled;
+        this.timeout = timeout;
+        this.limit = new AdaptiveConcurrencyLimit(initialLimit, minLimit, maxLimit, latencyThreshold.toNanos());
+    }
+
+    /**
+     * Runs {@code call} under the guard. Calls with the same operation and an equal {@code key} that overlap in time
+     * share one execution, so {@code key} must capture everything the result depends on.
+     *
+     * @throws BackendOverloadedException if the concurrency limit is reached
+     * @throws QueryTimeoutException      if no result arrived within the time budget
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T call(String operation, Object key, Supplier<T> call) {
+        if (!enabled) {
+            return call.get();
+        }
+        long deadline = System.nanoTime() + timeout.toNanos();
+        List<Object> callKey = List.of(operation, key);
+        CompletableFuture<Object> pending = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(callKey, pending);
+        if (existing != null) {
+            coalesced.increment();
+            return (T) await(operation, existing, deadline);
+        }
+
+        if (!limit.tryAcquire()) {
+            inFlight.remove(callKey, pending);
+            BackendOverloadedException overloaded = new BackendOverloadedException(operation, limit.getLimit());
+            pending.completeExceptionally(overloaded);
+            shed.increment();
+            log.debug("Shed Elasticsearch {} at a concurrency limit of {}", operation, limit.getLimit());
+            throw overloaded;
+        }
+        executor.execute(() -> {
+            long start = System.nanoTime();
+            boolean failed = false;
+            try {
+                pending.complete(call.get());
+            } catch (DataAccessException e) {
+                failed = isOverloadSignal(e);
+                pending.completeExceptionally(e);
+            } catch (RuntimeException | Error e) {
+                pending.completeExceptionally(e);
+            } finally {
+                inFlight.remove(callKey, pending);
+                limit.release(System.nanoTime() - start, failed);
+            }
+        });
+        return (T) await(operation, pending, deadline);
+    }
+
+    // Only failures that point at an overloaded backend lower the limit; a rejected query says nothing about load
+    private static boolean isOverloadSignal(DataAccessException e) {
+        if (e instanceof DataAccessResourceFailureException || e instanceof QueryTimeoutException) {
+            return true;
+        }
+        return e instanceof UncategorizedElasticsearchException uncategorized
+                && uncategorized.getStatusCode() != null
+                && (uncategorized.getStatusCode() == 429 || uncategorized.getStatusCode() >= 500);
+    }
+
+    private Object await(String operation, CompletableFuture<Object> result, long deadline) {
+        try {
+            return result.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            timeouts.increment();
+            throw new QueryTimeoutException(
+                    "Elasticsearch " + operation + " exceeded its " + timeout.toMillis() + " ms budget", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException("Elasticsearch " + operation + " failed", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new QueryTimeoutException("Interrupted while waiting for Elasticsearch " + operation, e);
+        }
+    }
+
+    public int getLimit() {
+        return limit.getLimit();
+    }
+
+    public int getInFlight() {
+        return limit.getInFlight();
+    }
+
+    @PreDestroy
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("course.search.guard.limit", this, ElasticsearchGuard::getLimit)
+                .description("Current adaptive concurrency limit for Elasticsearch calls")
+                .register(registry);
+        Gauge.builder("course.search.guard.inflight", this, ElasticsearchGuard::getInFlight).register(registry);
+        FunctionCounter.builder("course.search.guard.calls", coalesced, LongAdder::sum)
+                .tag("outcome", "coalesced").register(registry);
+        FunctionCounter.builder("course.search.guard.calls", shed, LongAdder::sum)
+                .tag("outcome", "shed").register(registry);
+        FunctionCounter.builder("course.search.guard.calls", timeouts, LongAdder::sum)
+                .tag("outcome", "timeout").register(registry);
+    }
+}
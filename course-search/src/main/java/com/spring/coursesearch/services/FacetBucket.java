@@ -0,0 +1,7 @@
+package com.spring.coursesearch.services;
+
+/**
+ * One bucket of a search facet: the term, histogram key or month, and how many matching courses fall into it.
+ */
+public record FacetBucket(String key, long count) {
+}
@@ -0,0 +1,1198 @@
+package com.spring.coursesearch.services;
+
+import com.spring.coursesearch.entity.CourseDocument;
+import com.spring.coursesearch.entity.CourseSummaryProjection;
+import org.springframework.data.elasticsearch.core.AggregationsContainer;
+import org.springframework.data.elasticsearch.core.SearchHit;
+import org.springframework.data.elasticsearch.core.SearchHits;
+import org.springframework.data.elasticsearch.core.SearchHitsImpl;
+import org.springframework.data.elasticsearch.core.TotalHitsRelation;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
+import java.util.function.ToIntFunction;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Immutable in-process copy of the course catalog that answers the same searches as the Elasticsearch index.
+ * Text goes through inverted indexes, ranges through value-sorted arrays and keyword filters through per-value
+ * document lists. A search starts from its most selective clause and checks the others per document, then reads
+ * the page off precomputed sort orders, so nothing is sorted per request.
+ */
+public final class InMemoryCourseIndex {
+
+    // Approximates the standard analyzer: lowercase runs of letters and digits
+    private static final Pattern TOKEN_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    // Filter dimensions; a facet ignores the clauses of its own dimension
+    private static final int AGE = 1;
+    private static final int PRICE = 1 << 1;
+    private static final int CATEGORY = 1 << 2;
+    private static final int TYPE = 1 << 3;
+    private static final int NEXT_SESSION = 1 << 4;
+
+    private static final int MAX_FUZZY_EXPANSIONS = 10_000;
+    // Same limits as the title query: fuzzy terms share the first character and at most 20 are expanded
+    private static final int FUZZY_PREFIX_LENGTH = 1;
+    private static final int FUZZY_MAX_EXPANSIONS = 20;
+    // Gram lengths of the title_prefix analyzer
+    private static final int MIN_PREFIX = 2;
+    private static final int MAX_PREFIX = 20;
+    // ignore_above of title.keyword
+    private static final int MAX_TITLE_KEY = 256;
+
+    // Histograms wider than this are rejected, as Elasticsearch rejects them with too_many_buckets
+    private static final int MAX_BUCKETS = 65_536;
+
+    private final int size;
+    private final int[] allDocs;
+
+    // Source documents and change versions, kept so that a sync can derive the next index
+    private final Map<String, CourseDocument> courses;
+    private final Map<String, Long> versions;
+
+    // Summary fields by document number
+    private final String[] ids;
+    private final String[] titles;
+    private final String[] nextSessionDates;
+
+    private final Map<String, int[]> titlePostings;
+    private final Map<String, int[]> descriptionPostings;
+    // Sorted, so all terms sharing a prefix are a contiguous range
+    private final String[] titleTerms;
+    private final long[] titleTermMasks;
+    private final String[] descriptionTerms;
+    // Title terms within the fuzziness of a query token, by token
+    private final Map<String, String[]> fuzzyExpansions = new ConcurrentHashMap<>();
+
+    private final KeywordColumn category;
+    private final KeywordColumn type;
+    private final KeywordColumn gradeRange;
+
+    private final NumericColumn price;
+    private final NumericColumn minAge;
+    private final NumericColumn maxAge;
+    private final NumericColumn nextSession;
+    // Months since year 0 in UTC, or -1 when there is no date
+    private final int[] nextSessionMonths;
+    // Saturated popularity, the rank_feature part of the relevance score; 0 without popularity
+    private final double[] popularityFeatures;
+
+    private final SortOrder upcoming;
+    private final SortOrder priceAsc;
+    private final SortOrder priceDesc;
+    private final SortOrder titleAsc;
+
+    // Normalized titles in sorted order, so a prefix is a contiguous range
+    private final String[] suggestKeys;
+    private final int[] suggestDocs;
+    private final String[] suggestTitles;
+    private final int[] suggestWeights;
+
+    private InMemoryCourseIndex(Map<String, CourseDocument> sources, Map<String, Long> sourceVersions) {
+        this.courses = sources;
+        this.versions = sourceVersions;
+        List<CourseDocument> courses = new ArrayList<>(sources.values());
+        size = courses.size();
+        allDocs = IntStream.range(0, size).toArray();
+        ids = new String[size];
+        titles = new String[size];
+        nextSessionDates = new String[size];
+        String[] categories = new String[size];
+        String[] types = new String[size];
+        String[] gradeRanges = new String[size];
+        double[] prices = new double[size];
+        double[] minAges = new double[size];
+        double[] maxAges = new double[size];
+        double[] sessions = new double[size];
+        int[] weights = new int[size];
+        popularityFeatures = new double[size];
+
+        Map<String, List<Integer>> titleTermDocs = new HashMap<>();
+        Map<String, List<Integer>> descriptionTermDocs = new HashMap<>();
+        for (int doc = 0; doc < size; doc++) {
+            CourseDocument course = courses.get(doc);
+            ids[doc] = course.getId();
+            titles[doc] = course.getTitle();
+            nextSessionDates[doc] = course.getNextSessionDate();
+            categories[doc] = course.getCategory();
+            types[doc] = course.getType();
+            gradeRanges[doc] = course.getGradeRange();
+            prices[doc] = course.getPrice() != null ? course.getPrice() : Double.NaN;
+            minAges[doc] = course.getMinAge() != null ? course.getMinAge() : Double.NaN;
+            maxAges[doc] = course.getMaxAge() != null ? course.getMaxAge() : Double.NaN;
+            sessions[doc] = parseDate(course.getNextSessionDate());
+            Integer weight = course.getSuggest() != null ? course.getSuggest().getWeight() : null;
+            weights[doc] = weight != null ? weight : 1;
+            Double popularity = course.getPopularity();
+            popularityFeatures[doc] = popularity != null && popularity > 0
+                    ? popularity / (popularity + CourseSearchService.RELEVANCE_POPULARITY_PIVOT) : 0;
+
+            addTerms(titleTermDocs, course.getTitle(), doc);
+            addTerms(descriptionTermDocs, course.getDescription(), doc);
+        }
+
+        titlePostings = toPostings(titleTermDocs);
+        descriptionPostings = toPostings(descriptionTermDocs);
+        titleTerms = titlePostings.keySet().stream().sorted().toArray(String[]::new);
+        descriptionTerms = descriptionPostings.keySet().stream().sorted().toArray(String[]::new);
+        titleTermMasks = new long[titleTerms.length];
+        for (int i = 0; i < titleTerms.length; i++) {
+            titleTermMasks[i] = charMask(titleTerms[i]);
+        }
+
+        category = new KeywordColumn(categories);
+        type = new KeywordColumn(types);
+        gradeRange = new KeywordColumn(gradeRanges);
+
+        price = new NumericColumn(prices);
+        minAge = new NumericColumn(minAges);
+        maxAge = new NumericColumn(maxAges);
+        nextSession = new NumericColumn(sessions);
+        nextSessionMonths = new int[size];
+        for (int doc = 0; doc < size; doc++) {
+            nextSessionMonths[doc] = Double.isNaN(sessions[doc]) ? -1 : month((long) sessions[doc]);
+        }
+
+        // Same orders as the Elasticsearch sorts: missing values last, id as the tiebreaker
+        Comparator<Integer> byId = Comparator.comparing(doc -> ids[doc], Comparator.nullsLast(Comparator.naturalOrder()));
+        IntFunction<Object> sessionValue = doc -> Double.isNaN(sessions[doc]) ? null : (Long) (long) sessions[doc];
+        IntFunction<Object> priceValue = doc -> Double.isNaN(prices[doc]) ? null : (Double) prices[doc];
+        upcoming = new SortOrder(sessionValue, missingLast(sessions, false).thenComparing(byId));
+        priceAsc = new SortOrder(priceValue, missingLast(prices, false).thenComparing(byId));
+        priceDesc = new SortOrder(priceValue, missingLast(prices, true).thenComparing(byId));
+        String[] titleKeys = new String[size];
+        for (int doc = 0; doc < size; doc++) {
+            titleKeys[doc] = titles[doc] != null && titles[doc].length() <= MAX_TITLE_KEY
+                    ? titles[doc].toLowerCase(Locale.ROOT) : null;
+        }
+        titleAsc = new SortOrder(doc -> titleKeys[doc],
+                Comparator.<Integer, String>comparing(doc -> titleKeys[doc], Comparator.nullsLast(Comparator.naturalOrder()))
+                        .thenComparing(byId));
+
+        int[] bySuggestKey = IntStream.range(0, size)
+                .filter(doc -> titles[doc] != null && !titles[doc].isBlank())
+                .boxed()
+                .sorted(Comparator.comparing(doc -> SuggestionTrie.normalize(titles[doc])))
+                .mapToInt(Integer::intValue)
+                .toArray();
+        suggestKeys = new String[bySuggestKey.length];
+        suggestDocs = bySuggestKey;
+        suggestTitles = new String[bySuggestKey.length];
+        suggestWeights = new int[bySuggestKey.length];
+        for (int i = 0; i < bySuggestKey.length; i++) {
+            int doc = bySuggestKey[i];
+            suggestKeys[i] = SuggestionTrie.normalize(titles[doc]);
+            suggestTitles[i] = titles[doc];
+            suggestWeights[i] = weights[doc];
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns a builder holding this index's courses and versions, for applying changes to a copy.
+     */
+    public Builder toBuilder() {
+        return new Builder(courses, versions);
+    }
+
+    /**
+     * Runs a search with the semantics of {@link CourseSearchService#buildSearchQuery(SearchParameters)}.
+     * Total hits are always exact; facets are returned as {@link Facets}.
+     */
+    public SearchHits<CourseSummaryProjection> search(SearchParameters p) {
+        long start = System.nanoTime();
+        List<Clause> clauses = clauses(p);
+        int[] matches = matching(clauses);
+
+        SortOrder order = sortOrder(p.sort());
+        long from = (long) p.page() * p.size();
+        List<SearchHit<CourseSummaryProjection>> hits = new ArrayList<>(Math.min(p.size(), matches.length));
+        if (from < matches.length) {
+            if (SearchParameters.SORT_RELEVANCE.equals(p.sort())) {
+                addRelevantHits(hits, matches, (int) from, p.size(), p.query() != null);
+            } else if (matches.length >= size / 8) {
+                // Dense matches: walk the sort order and stop as soon as the page is full
+                BitSet matching = new BitSet(size);
+                for (int doc : matches) {
+                    matching.set(doc);
+                }
+                long seen = 0;
+                for (int rank = 0; rank < size && hits.size() < p.size(); rank++) {
+                    int doc = order.docsByRank[rank];
+                    if (matching.get(doc) && seen++ >= from) {
+                        hits.add(hit(doc, order));
+                    }
+                }
+            } else {
+                // Sparse matches: marking their ranks and reading them back sorts them in O(matches + size / 64)
+                BitSet ranks = new BitSet(size);
+                for (int doc : matches) {
+                    ranks.set(order.rankByDoc[doc]);
+                }
+                long seen = 0;
+                for (int rank = ranks.nextSetBit(0); rank >= 0 && hits.size() < p.size(); rank = ranks.nextSetBit(rank + 1)) {
+                    if (seen++ >= from) {
+                        hits.add(hit(order.docsByRank[rank], order));
+                    }
+                }
+            }
+        }
+
+        Facets facets = p.facets() ? facets(clauses) : null;
+        return new SearchHitsImpl<>(matches.length, TotalHitsRelation.EQUAL_TO, Float.NaN,
+                Duration.ofNanos(System.nanoTime() - start), null, null, hits, facets, null, null);
+    }
+
+    /**
+     * Every course matching {@code p} in its sort order, each hit built as it is read. Matching and ordering run once,
+     * so reading them all costs about one search rather than one per page. Page, size and facets of {@code p} are
+     * ignored.
+     */
+    public Stream<SearchHit<CourseSummaryProjection>> stream(SearchParameters p) {
+        Ranking ranking = new Ranking(p, matching(clauses(p)), System.currentTimeMillis());
+        return IntStream.range(0, ranking.docs.length).mapToObj(ranking::hit);
+    }
+
+    /**
+     * Returns the {@code p.size()} hits that sort after {@code searchAfter}, the sort values of the last hit of the
+     * previous page, or the first page when it is null; the in-memory counterpart of {@code search_after}. Relevance
+     * decays from {@code relevanceOrigin} (epoch millis), so scores and positions stay the same across pages.
+     */
+    public SearchHits<CourseSummaryProjection> searchAfter(SearchParameters p, List<Object> searchAfter,
+                                                           long relevanceOrigin) {
+        long start = System.nanoTime();
+        List<Clause> clauses = clauses(p);
+        Ranking ranking = new Ranking(p, matching(clauses), relevanceOrigin);
+        int from = searchAfter != null ? ranking.firstAfter(searchAfter) : 0;
+        List<SearchHit<CourseSummaryProjection>> hits = IntStream
+                .range(from, (int) Math.min(ranking.docs.length, (long) from + p.size()))
+                .mapToObj(ranking::hit)
+                .toList();
+        Facets facets = p.facets() ? facets(clauses) : null;
+        return new SearchHitsImpl<>(ranking.docs.length, TotalHitsRelation.EQUAL_TO, Float.NaN,
+                Duration.ofNanos(System.nanoTime() - start), null, null, hits, facets, null, null);
+    }
+
+    private SortOrder sortOrder(String sort) {
+        return SearchParameters.SORT_PRICE_ASC.equals(sort) ? priceAsc
+                : SearchParameters.SORT_PRICE_DESC.equals(sort) ? priceDesc
+                : SearchParameters.SORT_TITLE.equals(sort) ? titleAsc
+                : upcoming;
+    }
+
+    /**
+     * Returns up to {@code limit} distinct titles starting with the prefix, highest suggest weight first.
+     */
+    public List<String> suggest(String partialTitle, int limit) {
+        if (partialTitle == null || partialTitle.isBlank()) {
+            return List.of();
+        }
+        String prefix = SuggestionTrie.normalize(partialTitle);
+        int from = Arrays.binarySearch(suggestKeys, prefix);
+        if (from < 0) {
+            from = -from - 1;
+        }
+        List<Integer> candidates = new ArrayList<>();
+        for (int i = from; i < suggestKeys.length && suggestKeys[i].startsWith(prefix); i++) {
+            candidates.add(i);
+        }
+        candidates.sort(Comparator.<Integer>comparingInt(i -> suggestWeights[i]).reversed()
+                .thenComparing(i -> suggestTitles[i]));
+
+        Set<String> suggestions = new LinkedHashSet<>();
+        for (int i = 0; i < candidates.size() && suggestions.size() < limit; i++) {
+            suggestions.add(suggestTitles[candidates.get(i)]);
+        }
+        return new ArrayList<>(suggestions);
+    }
+
+    /**
+     * Passes every title with its course id and suggest weight to {@code consumer}.
+     */
+    public void forEachSuggestion(SuggestionConsumer consumer) {
+        for (int i = 0; i < suggestTitles.length; i++) {
+            consumer.accept(ids[suggestDocs[i]], suggestTitles[i], suggestWeights[i]);
+        }
+    }
+
+    @FunctionalInterface
+    public interface SuggestionConsumer {
+        void accept(String id, String title, int weight);
+    }
+
+    /**
+     * Scores every match like the relevance query and keeps the best {@code from + pageSize} in a heap, so only
+     * the requested page is sorted. Text matches all count as 1 instead of a BM25 score.
+     */
+    private void addRelevantHits(List<SearchHit<CourseSummaryProjection>> hits, int[] matches, int from, int pageSize,
+                                 boolean text) {
+        long now = System.currentTimeMillis();
+        double[] scores = new double[matches.length];
+        int keep = (int) Math.min(matches.length, (long) from + pageSize);
+        // Heap head is the worst kept match: lowest score, then highest id
+        Comparator<Integer> bestFirst = Comparator.<Integer>comparingDouble(i -> scores[i]).reversed()
+                .thenComparing(i -> ids[matches[i]], Comparator.nullsLast(Comparator.naturalOrder()));
+        PriorityQueue<Integer> best = new PriorityQueue<>(keep + 1, bestFirst.reversed());
+        for (int i = 0; i < matches.length; i++) {
+            int doc = matches[i];
+            scores[i] = relevance(doc, text, now);
+            best.add(i);
+            if (best.size() > keep) {
+                best.poll();
+            }
+        }
+        Integer[] ranked = best.toArray(Integer[]::new);
+        Arrays.sort(ranked, bestFirst);
+        for (int r = from; r < ranked.length; r++) {
+            int i = ranked[r];
+            hits.add(hit(matches[i], scores[i], (float) scores[i]));
+        }
+    }
+
+    private double relevance(int doc, boolean text, long origin) {
+        return ((text ? 1 : 0) + popularityFeatures[doc]) * sessionDecay(nextSession.byDoc[doc], origin);
+    }
+
+    // Gauss decay around now; courses without a date are not decayed, as in Elasticsearch
+    private static double sessionDecay(double sessionMillis, long now) {
+        if (Double.isNaN(sessionMillis)) {
+            return 1;
+        }
+        double distance = Math.abs(sessionMillis - now) / CourseSearchService.RELEVANCE_DECAY_SCALE.toMillis();
+        return Math.pow(CourseSearchService.RELEVANCE_DECAY, distance * distance);
+    }
+
+    private SearchHit<CourseSummaryProjection> hit(int doc, SortOrder order) {
+        return hit(doc, order.sortValue.apply(doc), Float.NaN);
+    }
+
+    private SearchHit<CourseSummaryProjection> hit(int doc, Object sortValue, float score) {
+        CourseSummaryProjection summary = new CourseSummaryProjection();
+        summary.setId(ids[doc]);
+        summary.setTitle(titles[doc]);
+        summary.setCategory(category.value(doc));
+        summary.setPrice(Double.isNaN(price.byDoc[doc]) ? null : price.byDoc[doc]);
+        summary.setNextSessionDate(nextSessionDates[doc]);
+        return new SearchHit<>(CourseIndexManager.ALIAS, ids[doc], null, score,
+                new Object[]{sortValue, ids[doc]}, Map.of(), Map.of(), null, null, List.of(), summary);
+    }
+
+    private String[] fuzzyExpansion(String token, int edits) {
+        String[] cached = fuzzyExpansions.get(token);
+        if (cached != null) {
+            return cached;
+        }
+        long mask = charMask(token);
+        List<String> terms = new ArrayList<>();
+        // Only terms sharing the fixed prefix are candidates, and they are a contiguous range of the sorted terms
+        String prefix = token.substring(0, FUZZY_PREFIX_LENGTH);
+        for (int i = firstWithPrefix(titleTerms, prefix); i < titleTerms.length && titleTerms[i].startsWith(prefix); i++) {
+            String term = titleTerms[i];
+            // Every character missing on one side costs at least one edit, which rules out most terms cheaply
+            if (Math.abs(term.length() - token.length()) <= edits
+                    && Long.bitCount(mask & ~titleTermMasks[i]) <= edits
+                    && Long.bitCount(titleTermMasks[i] & ~mask) <= edits
+                    && withinEdits(token, term, edits)) {
+                terms.add(term);
+            }
+        }
+        if (terms.size() > FUZZY_MAX_EXPANSIONS) {
+            // Keep the closest terms, as Elasticsearch does when it caps the expansion
+            terms.sort(Comparator.comparingInt((String term) -> term.equals(token) ? 0
+                    : withinEdits(token, term, 1) ? 1 : 2).thenComparing(Comparator.naturalOrder()));
+            terms = terms.subList(0, FUZZY_MAX_EXPANSIONS);
+        }
+        if (fuzzyExpansions.size() >= MAX_FUZZY_EXPANSIONS) {
+            fuzzyExpansions.clear();
+        }
+        String[] expansion = terms.toArray(String[]::new);
+        fuzzyExpansions.put(token, expansion);
+        return expansion;
+    }
+
+    private List<Clause> clauses(SearchParameters p) {
+        List<Clause> clauses = new ArrayList<>();
+        if (p.query() != null) {
+            clauses.add(new TextClause(textMatches(p.query())));
+        }
+        if (p.minAge() != null) {
+            clauses.add(new RangeClause(AGE, minAge, p.minAge(), Double.POSITIVE_INFINITY));
+        }
+        if (p.maxAge() != null) {
+            clauses.add(new RangeClause(AGE, maxAge, Double.NEGATIVE_INFINITY, p.maxAge()));
+        }
+        if (p.minPrice() != null) {
+            clauses.add(new RangeClause(PRICE, price, p.minPrice(), Double.POSITIVE_INFINITY));
+        }
+        if (p.maxPrice() != null) {
+            clauses.add(new RangeClause(PRICE, price, Double.NEGATIVE_INFINITY, p.maxPrice()));
+        }
+        if (p.category() != null) {
+            clauses.add(new TermClause(CATEGORY, category, p.category()));
+        }
+        if (p.type() != null) {
+            clauses.add(new TermClause(TYPE, type, p.type()));
+        }
+        if (p.startDate() != null) {
+            clauses.add(new RangeClause(NEXT_SESSION, nextSession,
+                    Instant.parse(p.startDate()).toEpochMilli(), Double.POSITIVE_INFINITY));
+        }
+        return clauses;
+    }
+
+    // Documents matching every clause, enumerated from the most selective one
+    private int[] matching(List<Clause> clauses) {
+        if (clauses.isEmpty()) {
+            return allDocs;
+        }
+        Clause driver = clauses.get(0);
+        for (Clause clause : clauses) {
+            if (clause.estimate() < driver.estimate()) {
+                driver = clause;
+            }
+        }
+
+        Clause lead = driver;
+        Clause[] others = clauses.stream().filter(c -> c != lead).toArray(Clause[]::new);
+        int[] matches = new int[lead.estimate()];
+        int[] count = {0};
+        lead.forEach(doc -> {
+            for (Clause clause : others) {
+                if (!clause.test(doc)) {
+                    return;
+                }
+            }
+            matches[count[0]++] = doc;
+        });
+        return count[0] == matches.length ? matches : Arrays.copyOf(matches, count[0]);
+    }
+
+    // Title terms match with AUTO fuzziness or as a prefix of a title term, description terms exactly except
+    // for the last one, which matches as a prefix; any matching term is enough
+    private BitSet textMatches(String query) {
+        BitSet matches = new BitSet(size);
+        List<String> tokens = tokenize(query);
+        for (int t = 0; t < tokens.size(); t++) {
+            String token = tokens.get(t);
+            int edits = token.length() < 3 ? 0 : token.length() < 6 ? 1 : 2;
+            if (edits == 0) {
+                set(matches, titlePostings.get(token));
+            } else {
+                for (String term : fuzzyExpansion(token, edits)) {
+                    set(matches, titlePostings.get(term));
+                }
+            }
+            if (token.length() >= MIN_PREFIX && token.length() <= MAX_PREFIX) {
+                setWithPrefix(matches, titleTerms, titlePostings, token);
+            }
+            if (t == tokens.size() - 1) {
+                setWithPrefix(matches, descriptionTerms, descriptionPostings, token);
+            } else {
+                set(matches, descriptionPostings.get(token));
+            }
+        }
+        return matches;
+    }
+
+    private static void setWithPrefix(BitSet bits, String[] sortedTerms, Map<String, int[]> postings, String prefix) {
+        for (int i = firstWithPrefix(sortedTerms, prefix); i < sortedTerms.length && sortedTerms[i].startsWith(prefix); i++) {
+            set(bits, postings.get(sortedTerms[i]));
+        }
+    }
+
+    private static int firstWithPrefix(String[] sortedTerms, String prefix) {
+        int i = Arrays.binarySearch(sortedTerms, prefix);
+        return i >= 0 ? i : -i - 1;
+    }
+
+    // Mirrors the Elasticsearch facet aggregations, including the empty buckets histograms report between values.
+    // Each dimension's clauses become one bitset, so the base of every facet is a few word-wise ANDs.
+    private Facets facets(List<Clause> clauses) {
+        BitSet matchAll = new BitSet(size);
+        matchAll.set(0, size);
+        BitSet text = matchAll;
+        Map<Integer, BitSet> dimensions = new HashMap<>();
+        for (Clause clause : clauses) {
+            if (clause.dimension == 0) {
+                text = clause.toBitSet(size);
+            } else {
+                dimensions.merge(clause.dimension, clause.toBitSet(size), (a, b) -> {
+                    a.and(b);
+                    return a;
+                });
+            }
+        }
+
+        Map<String, List<FacetBucket>> facets = new LinkedHashMap<>();
+        facets.put("category", termsFacet(category, base(text, dimensions, CATEGORY), 50));
+        facets.put("type", termsFacet(type, base(text, dimensions, TYPE), 10));
+        facets.put("gradeRange", termsFacet(gradeRange, base(text, dimensions, 0), 20));
+        facets.put("price", new Histogram(price, 25).count(base(text, dimensions, PRICE)));
+        BitSet ageBase = base(text, dimensions, AGE);
+        facets.put("minAge", new Histogram(minAge, 1).count(ageBase));
+        facets.put("maxAge", new Histogram(maxAge, 1).count(ageBase));
+        facets.put("nextSessionDate", monthFacet(base(text, dimensions, NEXT_SESSION)));
+        return new Facets(facets);
+    }
+
+    private static BitSet base(BitSet text, Map<Integer, BitSet> dimensions, int excludedDimension) {
+        BitSet base = (BitSet) text.clone();
+        dimensions.forEach((dimension, docs) -> {
+            if (dimension != excludedDimension) {
+                base.and(docs);
+            }
+        });
+        return base;
+    }
+
+    private static List<FacetBucket> termsFacet(KeywordColumn column, BitSet docs, int limit) {
+        int[] counts = new int[column.values.length];
+        for (int doc = docs.nextSetBit(0); doc >= 0; doc = docs.nextSetBit(doc + 1)) {
+            int ordinal = column.ordinalByDoc[doc];
+            if (ordinal >= 0) {
+                counts[ordinal]++;
+            }
+        }
+        return termsFacet(column, counts, limit);
+    }
+
+    private List<FacetBucket> monthFacet(BitSet docs) {
+        double[] sessions = nextSession.sortedValues;
+        if (sessions.length == 0) {
+            return new ArrayList<>();
+        }
+        int first = month((long) sessions[0]);
+        long[] counts = new long[month((long) sessions[sessions.length - 1]) - first + 1];
+        for (int doc = docs.nextSetBit(0); doc >= 0; doc = docs.nextSetBit(doc + 1)) {
+            if (nextSessionMonths[doc] >= 0) {
+                counts[nextSessionMonths[doc] - first]++;
+            }
+        }
+        List<FacetBucket> buckets = new ArrayList<>();
+        for (int i = firstNonZero(counts), last = lastNonZero(counts); i >= 0 && i <= last; i++) {
+            int month = first + i;
+            buckets.add(new FacetBucket(YearMonth.of(month / 12, month % 12 + 1).toString(), counts[i]));
+        }
+        return buckets;
+    }
+
+    private static List<FacetBucket> termsFacet(KeywordColumn column, int[] counts, int limit) {
+        List<FacetBucket> buckets = new ArrayList<>();
+        for (int ordinal = 0; ordinal < counts.length; ordinal++) {
+            if (counts[ordinal] > 0) {
+                buckets.add(new FacetBucket(column.values[ordinal], counts[ordinal]));
+            }
+        }
+        buckets.sort(Comparator.comparingLong(FacetBucket::count).reversed().thenComparing(FacetBucket::key));
+        return buckets.size() > limit ? new ArrayList<>(buckets.subList(0, limit)) : buckets;
+    }
+
+    // Fixed-interval buckets whose slots span the whole column, so counting is one array increment per document
+    private static final class Histogram {
+        private final NumericColumn column;
+        private final double interval;
+        private final long first;
+        private final long[] counts;
+
+        private Histogram(NumericColumn column, double interval) {
+            this.column = column;
+            this.interval = interval;
+            double[] values = column.sortedValues;
+            first = values.length > 0 ? (long) Math.floor(values[0] / interval) : 0;
+            long last = values.length > 0 ? (long) Math.floor(values[values.length - 1] / interval) : -1;
+            if (last - first >= MAX_BUCKETS) {
+                throw new IllegalArgumentException("Histogram over " + (last - first + 1) + " buckets");
+            }
+            counts = new long[(int) (last - first + 1)];
+        }
+
+        private List<FacetBucket> count(BitSet docs) {
+            for (int doc = docs.nextSetBit(0); doc >= 0; doc = docs.nextSetBit(doc + 1)) {
+                double value = column.byDoc[doc];
+                if (!Double.isNaN(value)) {
+                    counts[(int) ((long) Math.floor(value / interval) - first)]++;
+                }
+            }
+            List<FacetBucket> buckets = new ArrayList<>();
+            for (int i = firstNonZero(counts), last = lastNonZero(counts); i >= 0 && i <= last; i++) {
+                buckets.add(new FacetBucket(formatNumber((first + i) * interval), counts[i]));
+            }
+            return buckets;
+        }
+    }
+
+    private static Comparator<Integer> missingLast(double[] values, boolean descending) {
+        return (a, b) -> {
+            boolean missingA = Double.isNaN(values[a]);
+            boolean missingB = Double.isNaN(values[b]);
+            if (missingA || missingB) {
+                return Boolean.compare(missingA, missingB);
+            }
+            return descending ? Double.compare(values[b], values[a]) : Double.compare(values[a], values[b]);
+        };
+    }
+
+    static List<String> tokenize(String text) {
+        if (text == null) {
+            return List.of();
+        }
+        List<String> tokens = new ArrayList<>();
+        for (String token : TOKEN_SEPARATOR.split(text.toLowerCase(Locale.ROOT))) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    // Optimal string alignment distance, i.e. Levenshtein plus adjacent transpositions, cut off above maxEdits
+    static boolean withinEdits(String a, String b, int maxEdits) {
+        int[] previous2 = new int[b.length() + 1];
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            int rowMin = i;
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                int distance = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+                if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+                    distance = Math.min(distance, previous2[j - 2] + 1);
+                }
+                current[j] = distance;
+                rowMin = Math.min(rowMin, distance);
+            }
+            if (rowMin > maxEdits) {
+                return false;
+            }
+            int[] recycled = previous2;
+            previous2 = previous;
+            previous = current;
+            current = recycled;
+        }
+        return previous[b.length()] <= maxEdits;
+    }
+
+    // One bit per character class; characters sharing a bit only make the mask test more lenient
+    private static long charMask(String term) {
+        long mask = 0;
+        for (int i = 0; i < term.length(); i++) {
+            mask |= 1L << (term.charAt(i) & 63);
+        }
+        return mask;
+    }
+
+    private static int month(long epochMillis) {
+        YearMonth month = YearMonth.from(Instant.ofEpochMilli(epochMillis).atZone(ZoneOffset.UTC));
+        return month.getYear() * 12 + month.getMonthValue() - 1;
+    }
+
+    private static int firstNonZero(long[] counts) {
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int lastNonZero(long[] counts) {
+        for (int i = counts.length - 1; i >= 0; i--) {
+            if (counts[i] > 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String formatNumber(double value) {
+        return value == Math.rint(value) ? String.valueOf((long) value) : String.valueOf(value);
+    }
+
+    private static double parseDate(String date) {
+        if (date == null) {
+            return Double.NaN;
+        }
+        try {
+            return Instant.parse(date).toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return Double.NaN;
+        }
+    }
+
+    private static void addTerms(Map<String, List<Integer>> termDocs, String text, int doc) {
+        for (String token : tokenize(text)) {
+            List<Integer> docs = termDocs.computeIfAbsent(token, t -> new ArrayList<>());
+            if (docs.isEmpty() || docs.get(docs.size() - 1) != doc) {
+                docs.add(doc);
+            }
+        }
+    }
+
+    private static Map<String, int[]> toPostings(Map<String, List<Integer>> termDocs) {
+        Map<String, int[]> postings = new HashMap<>(termDocs.size() * 2);
+        termDocs.forEach((term, docs) -> postings.put(term, docs.stream().mapToInt(Integer::intValue).toArray()));
+        return postings;
+    }
+
+    private static void set(BitSet bits, int[] docs) {
+        if (docs != null) {
+            for (int doc : docs) {
+                bits.set(doc);
+            }
+        }
+    }
+
+    /**
+     * Facet buckets of an in-memory search, returned where Elasticsearch would return its aggregations.
+     */
+    public record Facets(Map<String, List<FacetBucket>> aggregations)
+            implements AggregationsContainer<Map<String, List<FacetBucket>>> {
+    }
+
+    /**
+     * One constraint of a search. The dimension bit marks the facets that ignore it; text has none.
+     */
+    private abstract static class Clause {
+        final int dimension;
+
+        Clause(int dimension) {
+            this.dimension = dimension;
+        }
+
+        // Upper bound of the matching documents, used to pick the clause that enumerates candidates
+        abstract int estimate();
+
+        abstract void forEach(IntConsumer action);
+
+        abstract boolean test(int doc);
+
+        BitSet toBitSet(int size) {
+            BitSet docs = new BitSet(size);
+            forEach(docs::set);
+            return docs;
+        }
+    }
+
+    private static final class TextClause extends Clause {
+        private final BitSet docs;
+        private final int count;
+
+        TextClause(BitSet docs) {
+            super(0);
+            this.docs = docs;
+            this.count = docs.cardinality();
+        }
+
+        @Override
+        int estimate() {
+            return count;
+        }
+
+        @Override
+        void forEach(IntConsumer action) {
+            for (int doc = docs.nextSetBit(0); doc >= 0; doc = docs.nextSetBit(doc + 1)) {
+                action.accept(doc);
+            }
+        }
+
+        @Override
+        boolean test(int doc) {
+            return docs.get(doc);
+        }
+
+        @Override
+        BitSet toBitSet(int size) {
+            return docs;
+        }
+    }
+
+    private static final class RangeClause extends Clause {
+        private final NumericColumn column;
+        private final double min;
+        private final double max;
+        private final int from;
+        private final int to;
+
+        RangeClause(int dimension, NumericColumn column, double min, double max) {
+            super(dimension);
+            this.column = column;
+            this.min = min;
+            this.max = max;
+            this.from = column.firstAtLeast(min);
+            this.to = Math.max(from, column.firstAbove(max));
+        }
+
+        @Override
+        int estimate() {
+            return to - from;
+        }
+
+        @Override
+        void forEach(IntConsumer action) {
+            for (int i = from; i < to; i++) {
+                action.accept(column.docsByValue[i]);
+            }
+        }
+
+        @Override
+        boolean test(int doc) {
+            // NaN, i.e. a missing value, fails both comparisons
+            double value = column.byDoc[doc];
+            return value >= min && value <= max;
+        }
+    }
+
+    private static final class TermClause extends Clause {
+        private final KeywordColumn column;
+        private final int ordinal;
+
+        TermClause(int dimension, KeywordColumn column, String value) {
+            super(dimension);
+            this.column = column;
+            this.ordinal = column.ordinals.getOrDefault(value, -1);
+        }
+
+        @Override
+        int estimate() {
+            return ordinal >= 0 ? column.docsByOrdinal[ordinal].length : 0;
+        }
+
+        @Override
+        void forEach(IntConsumer action) {
+            if (ordinal >= 0) {
+                for (int doc : column.docsByOrdinal[ordinal]) {
+                    action.accept(doc);
+                }
+            }
+        }
+
+        @Override
+        boolean test(int doc) {
+            return ordinal >= 0 && column.ordinalByDoc[doc] == ordinal;
+        }
+    }
+
+    // A keyword field as value ordinals by document plus the documents of every value
+    private static final class KeywordColumn {
+        private final String[] values;
+        private final Map<String, Integer> ordinals = new HashMap<>();
+        private final int[] ordinalByDoc;
+        private final int[][] docsByOrdinal;
+
+        private KeywordColumn(String[] byDoc) {
+            ordinalByDoc = new int[byDoc.length];
+            List<String> distinct = new ArrayList<>();
+            int[] counts = new int[byDoc.length];
+            for (int doc = 0; doc < byDoc.length; doc++) {
+                if (byDoc[doc] == null) {
+                    ordinalByDoc[doc] = -1;
+                    continue;
+                }
+                int ordinal = ordinals.computeIfAbsent(byDoc[doc], v -> {
+                    distinct.add(v);
+                    return distinct.size() - 1;
+                });
+                ordinalByDoc[doc] = ordinal;
+                counts[ordinal]++;
+            }
+            values = distinct.toArray(String[]::new);
+            docsByOrdinal = new int[values.length][];
+            for (int ordinal = 0; ordinal < values.length; ordinal++) {
+                docsByOrdinal[ordinal] = new int[counts[ordinal]];
+                counts[ordinal] = 0;
+            }
+            for (int doc = 0; doc < byDoc.length; doc++) {
+                int ordinal = ordinalByDoc[doc];
+                if (ordinal >= 0) {
+                    docsByOrdinal[ordinal][counts[ordinal]++] = doc;
+                }
+            }
+        }
+
+        private String value(int doc) {
+            return ordinalByDoc[doc] >= 0 ? values[ordinalByDoc[doc]] : null;
+        }
+    }
+
+    // A numeric field both by document (NaN when missing) and as documents ordered by value
+    private static final class NumericColumn {
+        private final double[] byDoc;
+        private final double[] sortedValues;
+        private final int[] docsByValue;
+
+        private NumericColumn(double[] byDoc) {
+            this.byDoc = byDoc;
+            this.docsByValue = IntStream.range(0, byDoc.length)
+                    .filter(doc -> !Double.isNaN(byDoc[doc]))
+                    .boxed()
+                    .sorted(Comparator.comparingDouble(doc -> byDoc[doc]))
+                    .mapToInt(Integer::intValue)
+                    .toArray();
+            this.sortedValues = new double[docsByValue.length];
+            for (int i = 0; i < docsByValue.length; i++) {
+                sortedValues[i] = byDoc[docsByValue[i]];
+            }
+        }
+
+        private int firstAtLeast(double value) {
+            int low = 0;
+            int high = sortedValues.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (sortedValues[mid] < value) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        private int firstAbove(double value) {
+            int low = 0;
+            int high = sortedValues.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (sortedValues[mid] <= value) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+
+    // A precomputed sort: documents by rank, rank by document, and the primary sort value reported with each hit
+    private final class SortOrder {
+        private final IntFunction<Object> sortValue;
+        private final int[] docsByRank;
+        private final int[] rankByDoc;
+
+        private SortOrder(IntFunction<Object> sortValue, Comparator<Integer> comparator) {
+            this.sortValue = sortValue;
+            this.docsByRank = IntStream.range(0, size).boxed().sorted(comparator).mapToInt(Integer::intValue).toArray();
+            this.rankByDoc = new int[size];
+            for (int rank = 0; rank < size; rank++) {
+                rankByDoc[docsByRank[rank]] = rank;
+            }
+        }
+    }
+
+    // All matches of a search in sort order: relevance sorts every score once, the other sorts read the ranks of the
+    // matches off their precomputed order
+    private final class Ranking {
+        private final int[] docs;
+        private final double[] scores;
+        private final SortOrder order;
+        private final boolean descending;
+
+        private Ranking(SearchParameters p, int[] matches, long relevanceOrigin) {
+            if (SearchParameters.SORT_RELEVANCE.equals(p.sort())) {
+                double[] scoreByMatch = new double[matches.length];
+                for (int i = 0; i < matches.length; i++) {
+                    scoreByMatch[i] = relevance(matches[i], p.query() != null, relevanceOrigin);
+                }
+                Integer[] ranked = IntStream.range(0, matches.length).boxed().toArray(Integer[]::new);
+                Arrays.sort(ranked, Comparator.<Integer>comparingDouble(i -> scoreByMatch[i]).reversed()
+                        .thenComparing(i -> ids[matches[i]], Comparator.nullsLast(Comparator.naturalOrder())));
+                docs = new int[ranked.length];
+                scores = new double[ranked.length];
+                for (int r = 0; r < ranked.length; r++) {
+                    docs[r] = matches[ranked[r]];
+                    scores[r] = scoreByMatch[ranked[r]];
+                }
+                order = null;
+                descending = true;
+            } else {
+                order = sortOrder(p.sort());
+                descending = order == priceDesc;
+                BitSet ranks = new BitSet(size);
+                for (int doc : matches) {
+                    ranks.set(order.rankByDoc[doc]);
+                }
+                docs = ranks.stream().map(rank -> order.docsByRank[rank]).toArray();
+                scores = null;
+            }
+        }
+
+        private Object sortValue(int position) {
+            return order != null ? order.sortValue.apply(docs[position]) : (Object) scores[position];
+        }
+
+        // Binary search for the first position sorting after the sort values of a hit: the primary value with missing
+        // values last, then the id
+        private int firstAfter(List<Object> after) {
+            if (after.size() != 2) {
+                throw new IllegalArgumentException("Cursor sort values do not match the sort");
+            }
+            int low = 0;
+            int high = docs.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (compare(mid, after.get(0), after.get(1)) <= 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        private int compare(int position, Object afterValue, Object afterId) {
+            Object value = sortValue(position);
+            int primary;
+            if (value == null || afterValue == null) {
+                primary = Boolean.compare(value == null, afterValue == null);
+            } else if (value instanceof String text && afterValue instanceof String afterText) {
+                primary = descending ? afterText.compareTo(text) : text.compareTo(afterText);
+            } else if (value instanceof Number number && afterValue instanceof Number afterNumber) {
+                primary = descending ? Double.compare(afterNumber.doubleValue(), number.doubleValue())
+                        : Double.compare(number.doubleValue(), afterNumber.doubleValue());
+            } else {
+                throw new IllegalArgumentException("Cursor sort values do not match the sort");
+            }
+            if (primary != 0) {
+                return primary;
+            }
+            return Comparator.nullsLast(Comparator.<String>naturalOrder())
+                    .compare(ids[docs[position]], afterId != null ? afterId.toString() : null);
+        }
+
+        private SearchHit<CourseSummaryProjection> hit(int position) {
+            return InMemoryCourseIndex.this.hit(docs[position], sortValue(position),
+                    order != null ? Float.NaN : (float) scores[position]);
+        }
+    }
+
+    public static final class Builder {
+
+        // Keyed by id so that a repeated id replaces the earlier course, as indexing it again would
+        private final Map<String, CourseDocument> courses;
+        // External versions of courses applied through upsert or delete; courses added without one count as version 1
+        private final Map<String, Long> versions;
+
+        private Builder() {
+            this(Map.of(), Map.of());
+        }
+
+        private Builder(Map<String, CourseDocument> courses, Map<String, Long> versions) {
+            this.courses = new LinkedHashMap<>(courses);
+            this.versions = new HashMap<>(versions);
+        }
+
+        public Builder add(CourseDocument course) {
+            courses.put(course.getId() != null ? course.getId() : "\0" + courses.size(), course);
+            return this;
+        }
+
+        /**
+         * Adds or replaces a course unless it is already at {@code version} or newer, like external versioning in
+         * Elasticsearch. Returns whether the change was applied.
+         */
+        public boolean upsert(CourseDocument course, long version) {
+            if (!isNewer(course.getId(), version)) {
+                return false;
+            }
+            courses.put(course.getId(), course);
+            versions.put(course.getId(), version);
+            return true;
+        }
+
+        /**
+         * Removes a course unless it is already at {@code version} or newer. Returns whether the change was applied.
+         */
+        public boolean delete(String id, long version) {
+            if (!isNewer(id, version)) {
+                return false;
+            }
+            courses.remove(id);
+            versions.remove(id);
+            return true;
+        }
+
+        /**
+         * Removes every course whose next session starts before {@code cutoff}, mirroring dropped index partitions;
+         * courses without a session are kept. Returns the number of courses removed.
+         */
+        public int removeSessionsBefore(Instant cutoff) {
+            int removed = 0;
+            Iterator<CourseDocument> it = courses.values().iterator();
+            while (it.hasNext()) {
+                CourseDocument course = it.next();
+                if (parseDate(course.getNextSessionDate()) < cutoff.toEpochMilli()) {
+                    it.remove();
+                    versions.remove(course.getId());
+                    removed++;
+                }
+            }
+            return removed;
+        }
+
+        /**
+         * Sets the suggest weight of every course with a completion input to {@code weight}'s value.
+         * Returns the number of weights that changed.
+         */
+        public int updateSuggestWeights(ToIntFunction<CourseDocument> weight) {
+            int changed = 0;
+            for (CourseDocument course : courses.values()) {
+                if (course.getSuggest() == null) {
+                    continue;
+                }
+                int updated = weight.applyAsInt(course);
+                if (course.getSuggest().getWeight() == null || course.getSuggest().getWeight() != updated) {
+                    // Built indexes copied their weights, so changing the shared document does not affect them
+                    course.getSuggest().setWeight(updated);
+                    changed++;
+                }
+            }
+            return changed;
+        }
+
+        private boolean isNewer(String id, long version) {
+            if (!courses.containsKey(id)) {
+                return true;
+            }
+            return version > versions.getOrDefault(id, 1L);
+        }
+
+        public InMemoryCourseIndex build() {
+            // Copied in insertion order, which fixes the document numbers
+            return new InMemoryCourseIndex(Collections.unmodifiableMap(new LinkedHashMap<>(courses)), Map.copyOf(versions));
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.spring.coursesearch.services;
+
+import com.spring.coursesearch.entity.CourseSummaryProjection;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.elasticsearch.core.SearchHit;
+import org.springframework.data.elasticsearch.core.SearchHits;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Stream;
+
+/**
+ * Holds the in-memory copy of the catalog and the backend selection for searches and suggestions.
+ * The selection can be changed at runtime, e.g. to take Elasticsearch out of the request path during an incident.
+ */
+@Slf4j
+@Service
+public class InMemorySearchBackend implements MeterBinder {
+
+    // Index name reported for catalogs loaded without Elasticsearch
+    public static final String INDEX_NAME = "in-memory";
+
+    public enum Mode {
+        // Elasticsearch only
+        ELASTICSEARCH,
+        // In-memory index only; Elasticsearch is not used, not even for loading
+        MEMORY,
+        // Elasticsearch, answered from the in-memory index when a call fails
+        FALLBACK
+    }
+
+    private final boolean enabled;
+    private volatile Mode mode;
+    private volatile InMemoryCourseIndex index;
+
+    // The index holds a second copy of the catalog in the heap, so it is only built when a mode needs it
+    // or when it is enabled to allow switching modes at runtime
+    public InMemorySearchBackend(@Value("${course-search.search.backend:elasticsearch}") String mode,
+                                 @Value("${course-search.search.memory-index.enabled:false}") boolean enabled) {
+        this.mode = parseMode(mode);
+        this.enabled = enabled || this.mode != Mode.ELASTICSEARCH;
+    }
+
+    public static Mode parseMode(String mode) {
+        try {
+            return Mode.valueOf(mode.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown search backend '" + mode + "'", e);
+        }
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public void setMode(Mode mode) {
+        if (mode != Mode.ELASTICSEARCH && index == null) {
+            throw new IllegalStateException("The in-memory index is not loaded");
+        }
+        log.info("Search backend switched from {} to {}", this.mode, mode);
+        this.mode = mode;
+    }
+
+    /**
+     * Whether catalog loads should build the in-memory index.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean isLoaded() {
+        return index != null;
+    }
+
+    public InMemoryCourseIndex getIndex() {
+        return index;
+    }
+
+    public void publish(InMemoryCourseIndex index) {
+        this.index = index;
+        log.info("In-memory index loaded with {} courses", index.size());
+    }
+
+    public SearchHits<CourseSummaryProjection> search(SearchParameters parameters) {
+        return loadedIndex().search(parameters);
+    }
+
+    /**
+     * Streams every course matching {@code parameters} from the index loaded when the stream was opened, so a reload
+     * midway neither skips nor repeats courses.
+     */
+    public Stream<SearchHit<CourseSummaryProjection>> stream(SearchParameters parameters) {
+        return loadedIndex().stream(parameters);
+    }
+
+    public SearchHits<CourseSummaryProjection> searchAfter(SearchParameters parameters, List<Object> searchAfter,
+                                                           long relevanceOrigin) {
+        return loadedIndex().searchAfter(parameters, searchAfter, relevanceOrigin);
+    }
+
+    public List<String> suggest(String partialTitle, int limit) {
+        return loadedIndex().suggest(partialTitle, limit);
+    }
+
+    public int getCourseCount() {
+        InMemoryCourseIndex current = index;
+        return current != null ? current.size() : 0;
+    }
+
+    private InMemoryCourseIndex loadedIndex() {
+        InMemoryCourseIndex current = index;
+        if (current == null) {
+            throw new IllegalStateException("The in-memory index is not loaded");
+        }
+        return current;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("course.search.memory.courses", this, InMemorySearchBackend::getCourseCount).register(registry);
+    }
+}
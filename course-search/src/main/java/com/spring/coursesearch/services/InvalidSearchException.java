@@ -0,0 +1,13 @@
+package com.spring.coursesearch.services;
+
+/**
+ * Thrown for search parameters that no backend can answer, e.g. a malformed date. Maps to {@code 400}.
+ */
+public class InvalidSearchException extends IllegalArgumentException {
+
+    private static final long serialVersionUID = 1L;
+
+    public InvalidSearchException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,83 @@
+package com.spring.coursesearch.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Opaque position in a sorted result set: the {@code search_after} values of the last hit returned,
+ * the sort and a fingerprint of the search they belong to and, when the walk is pinned, the point-in-time id.
+ * Relevance-sorted walks also carry the instant their date decay is computed from.
+ */
+public record SearchCursor(String sort, String search, List<Object> searchAfter, String pointInTimeId,
+                           String relevanceOrigin) {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /**
+     * Cursor positioned after {@code searchAfter} in the results of {@code parameters}.
+     */
+    public static SearchCursor after(SearchParameters parameters, List<Object> searchAfter, String pointInTimeId,
+                                     String relevanceOrigin) {
+        return new SearchCursor(parameters.sort(), fingerprint(parameters), searchAfter, pointInTimeId,
+                relevanceOrigin);
+    }
+
+    /**
+     * Whether the cursor was issued for the same query, filters and sort as {@code parameters}; page, size and facets
+     * do not change which hits follow.
+     */
+    public boolean matches(SearchParameters parameters) {
+        return sort.equals(parameters.sort()) && search.equals(fingerprint(parameters));
+    }
+
+    // Unlike hashCode, stable across instances and restarts, so any replica can continue a walk
+    private static String fingerprint(SearchParameters p) {
+        String canonical = String.join("\u0000", String.valueOf(p.query()), String.valueOf(p.minAge()),
+                String.valueOf(p.maxAge()), String.valueOf(p.category()), String.valueOf(p.type()),
+                String.valueOf(p.minPrice()), String.valueOf(p.maxPrice()), String.valueOf(p.startDate()), p.sort());
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(canonical.getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(digest, 12));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public String encode() {
+        try {
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(MAPPER.writeValueAsBytes(this));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if the token was not produced by {@link #encode()}
+     */
+    public static SearchCursor decode(String token) {
+        try {
+            SearchCursor cursor = MAPPER.readValue(Base64.getUrlDecoder().decode(token), SearchCursor.class);
+            if (cursor.sort() == null || cursor.search() == null || cursor.searchAfter() == null
+                    || cursor.searchAfter().isEmpty()
+                    || (SearchParameters.SORT_RELEVANCE.equals(cursor.sort()) && cursor.relevanceOrigin() == null)) {
+                throw new IllegalArgumentException("Incomplete search cursor");
+            }
+            if (cursor.relevanceOrigin() != null) {
+                Instant.parse(cursor.relevanceOrigin());
+            }
+            return cursor;
+        } catch (IOException | DateTimeParseException e) {
+            throw new IllegalArgumentException("Malformed search cursor", e);
+        }
+    }
+}
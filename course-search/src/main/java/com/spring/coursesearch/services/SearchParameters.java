@@ -0,0 +1,85 @@
+package com.spring.coursesearch.services;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Canonical form of the {@code /api/search} parameters. Equal searches produce equal instances,
+ * which makes this the key of the search result cache.
+ */
+public record SearchParameters(String query, Integer minAge, Integer maxAge, String category, String type,
+                               Double minPrice, Double maxPrice, String startDate, String sort, int page, int size,
+                               boolean facets) {
+
+    public static final String SORT_UPCOMING = "upcoming";
+    public static final String SORT_PRICE_ASC = "priceAsc";
+    public static final String SORT_PRICE_DESC = "priceDesc";
+    public static final String SORT_TITLE = "title";
+    public static final String SORT_RELEVANCE = "relevance";
+
+    public static SearchParameters of(String query, Integer minAge, Integer maxAge, String category, String type,
+                                      Double minPrice, Double maxPrice, String startDate, String sort,
+                                      int page, int size) {
+        return of(query, minAge, maxAge, category, type, minPrice, maxPrice, startDate, sort, page, size, false);
+    }
+
+    public static SearchParameters of(String query, Integer minAge, Integer maxAge, String category, String type,
+                                      Double minPrice, Double maxPrice, String startDate, String sort,
+                                      int page, int size, boolean facets) {
+        return new SearchParameters(blankToNull(query), minAge, maxAge, blankToNull(category), blankToNull(type),
+                normalizePrice(minPrice), normalizePrice(maxPrice), normalizeStartDate(blankToNull(startDate)),
+                normalizeSort(sort),
+                page, size, facets);
+    }
+
+    public SearchParameters withPaging(int page, int size) {
+        return new SearchParameters(query, minAge, maxAge, category, type, minPrice, maxPrice, startDate, sort,
+                page, size, facets);
+    }
+
+    private static String blankToNull(String value) {
+        return value == null || value.isBlank() ? null : value.trim();
+    }
+
+    // Prices are compared in cents so 50, 50.0 and 49.999999 share a cache entry
+    private static Double normalizePrice(Double price) {
+        return price == null ? null : BigDecimal.valueOf(price).setScale(2, RoundingMode.HALF_UP).doubleValue();
+    }
+
+    // Sessions are stored to the second in one format; rounding up to the next whole second keeps the same matches.
+    // Malformed dates are rejected here so no backend ever sees them
+    private static String normalizeStartDate(String startDate) {
+        if (startDate == null) {
+            return null;
+        }
+        Instant instant;
+        try {
+            instant = startDate.length() == 10
+                    ? LocalDate.parse(startDate).atStartOfDay(ZoneOffset.UTC).toInstant()
+                    : Instant.parse(startDate);
+        } catch (DateTimeParseException e) {
+            throw new InvalidSearchException(
+                    "startDate must be an ISO-8601 date or instant, e.g. 2025-07-01T00:00:00Z: '" + startDate + "'");
+        }
+        Instant seconds = instant.truncatedTo(ChronoUnit.SECONDS);
+        return (seconds.equals(instant) ? seconds : seconds.plusSeconds(1)).toString();
+    }
+
+    private static String normalizeSort(String sort) {
+        if (SORT_PRICE_ASC.equalsIgnoreCase(sort)) {
+            return SORT_PRICE_ASC;
+        } else if (SORT_PRICE_DESC.equalsIgnoreCase(sort)) {
+            return SORT_PRICE_DESC;
+        } else if (SORT_TITLE.equalsIgnoreCase(sort)) {
+            return SORT_TITLE;
+        } else if (SORT_RELEVANCE.equalsIgnoreCase(sort)) {
+            return SORT_RELEVANCE;
+        }
+        return SORT_UPCOMING;
+    }
+}
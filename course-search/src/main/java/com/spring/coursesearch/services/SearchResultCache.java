@@ -0,0 +1,144 @@
+package com.spring.coursesearch.services;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.spring.coursesearch.entity.CourseSummaryProjection;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.elasticsearch.core.SearchHits;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+
+/**
+ * Bounded, short-lived cache of search results keyed by {@link SearchParameters}.
+ * Concurrent misses for the same key wait on a single backend call instead of each querying Elasticsearch.
+ * Results are also kept for a longer stale period, to be served only while the backend cannot answer.
+ */
+@Slf4j
+@Service
+public class SearchResultCache implements MeterBinder {
+
+    private final boolean enabled;
+    private final AsyncCache<SearchParameters, SearchHits<CourseSummaryProjection>> cache;
+    private final Cache<SearchParameters, SearchHits<CourseSummaryProjection>> stale;
+
+    public SearchResultCache(@Value("${course-search.search.cache.enabled:true}") boolean enabled,
+                             @Value("${course-search.search.cache.max-hits:100000}") long maxHits,
+                             @Value("${course-search.search.cache.ttl:30s}") Duration ttl,
+                             @Value("${course-search.search.cache.stale-ttl:10m}") Duration staleTtl) {
+        this.enabled = enabled;
+        // Holds the same result objects as the main cache, so it costs references rather than copies
+        this.stale = Caffeine.newBuilder()
+                .maximumWeight(maxHits)
+                .<SearchParameters, SearchHits<CourseSummaryProjection>>weigher(
+                        (key, hits) -> 1 + hits.getSearchHits().size())
+                .expireAfterWrite(staleTtl)
+                .build();
+        // Weighted by hit count so a few huge pages cannot crowd out memory
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxHits)
+                .<SearchParameters, SearchHits<CourseSummaryProjection>>weigher(
+                        (key, hits) -> 1 + hits.getSearchHits().size())
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .buildAsync();
+    }
+
+    public SearchHits<CourseSummaryProjection> get(SearchParameters parameters,
+                                                   Function<SearchParameters, SearchHits<CourseSummaryProjection>> loader) {
+        if (!enabled) {
+            return loader.apply(parameters);
+        }
+
+        // The first caller runs the load on its own thread, outside any cache lock, so a slow backend call
+        // never pins a carrier thread; concurrent callers for the same key wait on its future
+        CompletableFuture<SearchHits<CourseSummaryProjection>> pending = new CompletableFuture<>();
+        CompletableFuture<SearchHits<CourseSummaryProjection>> existing = cache.getIfPresent(parameters);
+        if (existing == null) {
+            existing = cache.asMap().putIfAbsent(parameters, pending);
+        }
+        if (existing != null) {
+            try {
+                return existing.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+        }
+        try {
+            SearchHits<CourseSummaryProjection> searchHits = loader.apply(parameters);
+            pending.complete(searchHits);
+            stale.put(parameters, searchHits);
+            return searchHits;
+        } catch (Throwable e) {
+            // Failed loads are evicted by the cache, so the next caller retries; waiters must never be left pending
+            pending.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the cached result, waiting for it if another caller is loading it, or null when there is none.
+     */
+    public SearchHits<CourseSummaryProjection> getIfPresent(SearchParameters parameters) {
+        if (!enabled) {
+            return null;
+        }
+        CompletableFuture<SearchHits<CourseSummaryProjection>> existing = cache.getIfPresent(parameters);
+        try {
+            return existing != null ? existing.join() : null;
+        } catch (CompletionException e) {
+            return null;
+        }
+    }
+
+    public void put(SearchParameters parameters, SearchHits<CourseSummaryProjection> searchHits) {
+        if (enabled) {
+            cache.put(parameters, CompletableFuture.completedFuture(searchHits));
+            stale.put(parameters, searchHits);
+        }
+    }
+
+    /**
+     * Returns the last result stored for the parameters within the stale period, or null when there is none.
+     * Meant for answering while the backend is failing or shedding load.
+     */
+    public SearchHits<CourseSummaryProjection> getStale(SearchParameters parameters) {
+        return enabled ? stale.getIfPresent(parameters) : null;
+    }
+
+    @EventListener
+    public void onCatalogReloaded(CatalogReloadedEvent event) {
+        invalidateAll();
+    }
+
+    // Any change can move a course into or out of any cached page, so synced changes flush the cache too
+    @EventListener
+    public void onCatalogChanged(CatalogChangedEvent event) {
+        invalidateAll();
+    }
+
+    public void invalidateAll() {
+        // Stale results survive, since an outdated answer still beats none while the backend is failing
+        cache.synchronous().invalidateAll();
+        log.debug("Search result cache invalidated");
+    }
+
+    public CacheStats stats() {
+        return cache.synchronous().stats();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, cache, "search-results");
+    }
+}
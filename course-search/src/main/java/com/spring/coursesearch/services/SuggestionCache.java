@@ -0,0 +1,258 @@
+package com.spring.coursesearch.services;
+
+import com.spring.coursesearch.entity.CourseDocument;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.elasticsearch.client.elc.NativeQuery;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.SearchHit;
+import org.springframework.data.elasticsearch.core.SearchHitsIterator;
+import org.springframework.data.elasticsearch.core.query.FetchSourceFilter;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-process autocomplete layer in front of {@link CourseSearchService#suggestTitles(String)}.
+ * Short prefixes are answered from a {@link SuggestionTrie} built from the index after every catalog load.
+ * The trie expires after a TTL, so catalog changes this instance was not told about, such as a reindex run by
+ * another instance, are picked up. An expired trie keeps answering while its replacement is built in the background,
+ * and is evicted if that fails. Synced changes are patched in as they arrive, but the trie is rebuilt with them at most
+ * once per rebuild interval, since a rebuild costs time in the whole catalog.
+ */
+@Slf4j
+@Service
+public class SuggestionCache implements MeterBinder {
+
+    private final ElasticsearchOperations elasticsearchOperations;
+    private final InMemorySearchBackend memoryBackend;
+
+    @Value("${course-search.suggest.cache.enabled:true}")
+    private boolean enabled = true;
+
+    // Longest prefix answered locally; longer prefixes are selective enough for the completion suggester
+    @Value("${course-search.suggest.cache.max-depth:3}")
+    private int maxDepth = 3;
+
+    // Catalogs larger than this are not cached at all rather than cached partially
+    @Value("${course-search.suggest.cache.max-titles:100000}")
+    private int maxTitles = 100_000;
+
+    @Value("${course-search.suggest.cache.ttl:10m}")
+    private Duration ttl = Duration.ofMinutes(10);
+
+    @Value("${course-search.suggest.size:10}")
+    private int suggestSize = 10;
+
+    @Value("${course-search.suggest.fuzzy:true}")
+    private boolean suggestFuzzy = true;
+
+    // Changes synced within this long of the last rebuild wait for the next lookup after it to be built in
+    @Value("${course-search.suggest.cache.rebuild-interval:30s}")
+    private Duration rebuildInterval = Duration.ofSeconds(30);
+
+    private volatile SuggestionTrie trie;
+    private volatile long builtAt;
+    // Set while suggestions hold changes the trie does not have yet
+    private volatile boolean rebuildPending;
+    // Title and weight by course id, the source the trie is rebuilt from; mutable whenever the trie is set,
+    // guarded by this
+    private Map<String, Suggestion> suggestions = Map.of();
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    @Autowired
+    public SuggestionCache(ElasticsearchOperations elasticsearchOperations, InMemorySearchBackend memoryBackend) {
+        this.elasticsearchOperations = elasticsearchOperations;
+        this.memoryBackend = memoryBackend;
+    }
+
+    @EventListener
+    public void onCatalogReloaded(CatalogReloadedEvent event) {
+        warm();
+    }
+
+    /**
+     * Patches the suggestions with synced changes and rebuilds the trie from them, without reading the catalog again,
+     * once the rebuild interval is up.
+     */
+    @EventListener
+    public synchronized void onCatalogChanged(CatalogChangedEvent event) {
+        if (trie == null || event.changes().isEmpty()) {
+            // Disabled or never warmed; the next warm reads the whole catalog anyway
+            return;
+        }
+        for (CourseChange change : event.changes()) {
+            CourseDocument course = change.course();
+            if (change.op() == CourseChange.Op.DELETE) {
+                suggestions.remove(change.courseId());
+            } else {
+                Integer weight = course.getSuggest() != null ? course.getSuggest().getWeight() : null;
+                suggestions.put(change.courseId(), new Suggestion(course.getTitle(), weight != null ? weight : 1));
+            }
+        }
+        if (suggestions.size() > maxTitles) {
+            disable();
+            return;
+        }
+        if (System.nanoTime() - builtAt >= rebuildInterval.toNanos()) {
+            rebuild();
+        } else {
+            rebuildPending = true;
+        }
+    }
+
+    /**
+     * Rebuilds the trie from the in-memory index when one is loaded, otherwise from the titles behind the course alias.
+     * The previous trie keeps answering until the new one is published.
+     */
+    public synchronized void warm() {
+        if (!enabled) {
+            trie = null;
+            return;
+        }
+
+        Map<String, Suggestion> loaded = new HashMap<>();
+        InMemoryCourseIndex memoryIndex = memoryBackend.getIndex();
+        if (memoryIndex != null) {
+            if (memoryIndex.size() > maxTitles) {
+                disable();
+                return;
+            }
+            memoryIndex.forEachSuggestion((id, title, weight) -> loaded.put(id, new Suggestion(title, weight)));
+        } else {
+            NativeQuery query = NativeQuery.builder()
+                    .withQuery(q -> q.matchAll(m -> m))
+                    .withSourceFilter(new FetchSourceFilter(true, new String[]{"title", "suggest"}, null))
+                    .withPageable(PageRequest.of(0, 1000))
+                    .build();
+            try (SearchHitsIterator<CourseDocument> hits = elasticsearchOperations.searchForStream(query, CourseDocument.class)) {
+                while (hits.hasNext()) {
+                    if (loaded.size() >= maxTitles) {
+                        disable();
+                        return;
+                    }
+                    SearchHit<CourseDocument> hit = hits.next();
+                    CourseDocument course = hit.getContent();
+                    Integer weight = course.getSuggest() != null ? course.getSuggest().getWeight() : null;
+                    loaded.put(hit.getId(), new Suggestion(course.getTitle(), weight != null ? weight : 1));
+                }
+            }
+        }
+        suggestions = loaded;
+        rebuild();
+    }
+
+    // Rebuilds the trie from the current suggestions, without reading the catalog again
+    private void rebuild() {
+        SuggestionTrie.Builder builder = SuggestionTrie.builder(maxDepth, suggestSize);
+        suggestions.values().forEach(suggestion -> builder.add(suggestion.title(), suggestion.weight()));
+        SuggestionTrie built = builder.build();
+        trie = built;
+        builtAt = System.nanoTime();
+        rebuildPending = false;
+        log.info("Suggestion cache warmed with {} titles in {} nodes", built.getTitleCount(), built.getNodeCount());
+    }
+
+    private void disable() {
+        log.warn("Catalog has more than {} titles, suggestion cache disabled", maxTitles);
+        suggestions = Map.of();
+        trie = null;
+    }
+
+    private synchronized void rebuildPending() {
+        if (rebuildPending && trie != null) {
+            rebuild();
+        }
+    }
+
+    // Rebuilds an expired trie, or one with pending changes, in the background, once at a time
+    private void refresh(boolean expired) {
+        if (!refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        Thread.ofVirtual().name("suggestion-cache-refresh").start(() -> {
+            try {
+                if (expired) {
+                    warm();
+                } else {
+                    rebuildPending();
+                }
+            } catch (RuntimeException e) {
+                log.warn("Refreshing the suggestion cache failed, evicting it", e);
+                trie = null;
+            } finally {
+                refreshing.set(false);
+            }
+        });
+    }
+
+    /**
+     * Returns locally known suggestions, or an empty Optional when the completion suggester has to answer.
+     */
+    public Optional<List<String>> lookup(String partialTitle) {
+        SuggestionTrie current = trie;
+        if (current != null) {
+            long age = System.nanoTime() - builtAt;
+            if (age > ttl.toNanos()) {
+                refresh(true);
+            } else if (rebuildPending && age >= rebuildInterval.toNanos()) {
+                refresh(false);
+            }
+        }
+        if (current != null && partialTitle != null) {
+            String prefix = SuggestionTrie.normalize(partialTitle);
+            List<String> titles = current.lookup(prefix);
+            // An exact-prefix answer equals the suggester's when it is already full or fuzziness does not apply yet
+            if (titles != null && (titles.size() >= suggestSize || !suggestFuzzy
+                    || prefix.length() < CourseSearchService.FUZZY_MIN_LENGTH)) {
+                hits.increment();
+                return Optional.of(titles);
+            }
+        }
+        misses.increment();
+        return Optional.empty();
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public int getTitleCount() {
+        SuggestionTrie current = trie;
+        return current != null ? current.getTitleCount() : 0;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("course.suggest.cache.requests", hits, LongAdder::sum)
+                .tag("result", "hit")
+                .register(registry);
+        FunctionCounter.builder("course.suggest.cache.requests", misses, LongAdder::sum)
+                .tag("result", "miss")
+                .register(registry);
+        Gauge.builder("course.suggest.cache.titles", this, SuggestionCache::getTitleCount).register(registry);
+    }
+
+    private record Suggestion(String title, int weight) {
+    }
+}
@@ -0,0 +1,163 @@
+package com.spring.coursesearch.services;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.TreeMap;
+
+/**
+ * Immutable, depth-limited prefix trie where every node stores the best-weighted titles below it.
+ * Lookups walk at most {@code maxDepth} characters and never allocate beyond the returned list.
+ */
+public final class SuggestionTrie {
+
+    private static final String[] NO_TITLES = new String[0];
+
+    private final Node root;
+    private final int maxDepth;
+    private final int titleCount;
+    private final int nodeCount;
+
+    private SuggestionTrie(Node root, int maxDepth, int titleCount, int nodeCount) {
+        this.root = root;
+        this.maxDepth = maxDepth;
+        this.titleCount = titleCount;
+        this.nodeCount = nodeCount;
+    }
+
+    public static String normalize(String prefix) {
+        return prefix.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    public static Builder builder(int maxDepth, int suggestionsPerNode) {
+        return new Builder(maxDepth, suggestionsPerNode);
+    }
+
+    /**
+     * Returns the stored titles for an already normalized prefix, or {@code null} if the prefix is longer than the trie.
+     * An empty list means no title starts with the prefix.
+     */
+    public List<String> lookup(String normalizedPrefix) {
+        if (normalizedPrefix.length() > maxDepth) {
+            return null;
+        }
+        Node node = root;
+        for (int i = 0; i < normalizedPrefix.length() && node != null; i++) {
+            node = node.child(normalizedPrefix.charAt(i));
+        }
+        return node == null ? List.of() : Arrays.asList(node.titles);
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public int getTitleCount() {
+        return titleCount;
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    private static final class Node {
+        // Children are kept in parallel arrays sorted by key and found by binary search
+        private final char[] keys;
+        private final Node[] children;
+        private final String[] titles;
+
+        private Node(char[] keys, Node[] children, String[] titles) {
+            this.keys = keys;
+            this.children = children;
+            this.titles = titles;
+        }
+
+        private Node child(char key) {
+            int i = Arrays.binarySearch(keys, key);
+            return i >= 0 ? children[i] : null;
+        }
+    }
+
+    public static final class Builder {
+
+        private static final Comparator<WeightedTitle> BEST_FIRST =
+                Comparator.comparingInt(WeightedTitle::weight).reversed().thenComparing(WeightedTitle::title);
+
+        private final int maxDepth;
+        private final int suggestionsPerNode;
+        private final MutableNode root = new MutableNode();
+        private int titleCount;
+
+        private Builder(int maxDepth, int suggestionsPerNode) {
+            this.maxDepth = maxDepth;
+            this.suggestionsPerNode = suggestionsPerNode;
+        }
+
+        public Builder add(String title, int weight) {
+            if (title == null || title.isBlank()) {
+                return this;
+            }
+            String key = normalize(title);
+            WeightedTitle entry = new WeightedTitle(title, weight);
+            MutableNode node = root;
+            for (int i = 0; i < Math.min(maxDepth, key.length()); i++) {
+                node = node.children.computeIfAbsent(key.charAt(i), c -> new MutableNode());
+                node.offer(entry, suggestionsPerNode);
+            }
+            titleCount++;
+            return this;
+        }
+
+        public SuggestionTrie build() {
+            int[] nodeCount = {0};
+            return new SuggestionTrie(freeze(root, nodeCount), maxDepth, titleCount, nodeCount[0]);
+        }
+
+        private Node freeze(MutableNode node, int[] nodeCount) {
+            nodeCount[0]++;
+            char[] keys = new char[node.children.size()];
+            Node[] children = new Node[keys.length];
+            int i = 0;
+            for (var child : node.children.entrySet()) {
+                keys[i] = child.getKey();
+                children[i++] = freeze(child.getValue(), nodeCount);
+            }
+            String[] titles = node.best.isEmpty() ? NO_TITLES
+                    : node.best.stream().map(WeightedTitle::title).toArray(String[]::new);
+            return new Node(keys, children, titles);
+        }
+
+        private static final class MutableNode {
+            private final TreeMap<Character, MutableNode> children = new TreeMap<>();
+            private final List<WeightedTitle> best = new ArrayList<>();
+
+            // Keeps the node's list sorted best-first and bounded; duplicate titles keep their highest weight
+            private void offer(WeightedTitle entry, int limit) {
+                for (int i = 0; i < best.size(); i++) {
+                    if (best.get(i).title().equals(entry.title())) {
+                        if (best.get(i).weight() >= entry.weight()) {
+                            return;
+                        }
+                        best.remove(i);
+                        break;
+                    }
+                }
+                int at = 0;
+                while (at < best.size() && BEST_FIRST.compare(best.get(at), entry) <= 0) {
+                    at++;
+                }
+                if (at < limit) {
+                    best.add(at, entry);
+                    if (best.size() > limit) {
+                        best.remove(best.size() - 1);
+                    }
+                }
+            }
+        }
+
+        private record WeightedTitle(String title, int weight) {
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.spring.coursesearch;
+
+import com.spring.coursesearch.controller.CourseSearchController.SearchResponse;
+import com.spring.coursesearch.services.CatalogSyncService;
+import com.spring.coursesearch.services.CatalogSyncService.SyncReport;
+import com.spring.coursesearch.services.SuggestionCache;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Applies a change feed to the in-memory backend; no Elasticsearch is needed.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {"course-search.search.backend=memory", "course-search.sync.poll-interval=1h",
+                "course-search.sync.memory-rebuild-interval=0s", "course-search.suggest.cache.rebuild-interval=0s"})
+public class CatalogSyncIntegrationTest {
+
+    private static final Path DELTA_FILE = createDeltaFile();
+
+    @DynamicPropertySource
+    static void syncProperties(DynamicPropertyRegistry registry) {
+        registry.add("course-search.sync.delta-file", DELTA_FILE::toString);
+    }
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private CatalogSyncService catalogSync;
+
+    @Autowired
+    private SuggestionCache suggestionCache;
+
+    private final RestTemplate restTemplate = new RestTemplate();
+
+    @Test
+    void testChangesAreAppliedOnceAndStaleVersionsSkipped() throws IOException {
+        append("""
+                {"op":"upsert","version":2,"course":{"id":"course_61","title":"Ukulele Basics","category":"Music","type":"COURSE","price":30.0}}
+                {"op":"delete","id":"course_14","version":2}
+                {"op":"upsert","version":1,"course":{"id":"course_1","title":"Stale Algebra"}}
+                """);
+
+        SyncReport report = catalogSync.sync();
+
+        assertEquals(2, report.applied());
+        assertEquals(1, report.stale());
+        assertEquals(List.of("Ukulele Basics"), titles("/api/search?q=ukulele"));
+        assertEquals(List.of(), titles("/api/search?q=guitar"));
+        assertEquals(List.of("Introduction to Algebra"), titles("/api/search?q=introduction algebra&category=Math&size=1"));
+        // The suggestion cache is patched with the changes instead of being rebuilt from the catalog
+        assertEquals(Optional.of(List.of("Ukulele Basics")), suggestionCache.lookup("uk"));
+        assertFalse(suggestionCache.lookup("gu").orElse(List.of()).contains("Guitar Lessons"));
+
+        // Nothing new, and a line still being written, are both left for later
+        assertEquals(0, catalogSync.sync().applied());
+        append("{\"op\":\"delete\",\"id\":\"course_61\"");
+        assertEquals(0, catalogSync.sync().applied());
+        append(",\"version\":3}\n");
+        assertEquals(1, catalogSync.sync().applied());
+        assertEquals(List.of(), titles("/api/search?q=ukulele"));
+        assertFalse(suggestionCache.lookup("uk").orElse(List.of()).contains("Ukulele Basics"));
+    }
+
+    private List<String> titles(String path) {
+        SearchResponse body = restTemplate.getForObject("http://localhost:" + port + path, SearchResponse.class);
+        assertNotNull(body);
+        return body.getCourses().stream().map(c -> c.getTitle()).toList();
+    }
+
+    private static void append(String lines) throws IOException {
+        Files.writeString(DELTA_FILE, lines, StandardOpenOption.APPEND);
+    }
+
+    private static Path createDeltaFile() {
+        try {
+            Path file = Files.createTempFile("course-changes", ".ndjson");
+            file.toFile().deleteOnExit();
+            Path.of(file + ".checkpoint").toFile().deleteOnExit();
+            return file;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
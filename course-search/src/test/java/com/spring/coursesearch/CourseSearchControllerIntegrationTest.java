@@ -1,7 +1,10 @@
 package com.spring.coursesearch;
 
+import com.spring.coursesearch.controller.CourseSearchController.SearchRequest;
 import com.spring.coursesearch.controller.CourseSearchController.SearchResponse;
 import com.spring.coursesearch.entity.CourseDocument;
+import com.spring.coursesearch.services.DataLoaderService;
+import com.spring.coursesearch.services.FacetBucket;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -13,42 +16,23 @@ import org.springframework.http.*;
 import org.springframework.test.context.DynamicPropertyRegistry;
 import org.springframework.test.context.DynamicPropertySource;
 import org.springframework.web.client.RestTemplate;
-import org.testcontainers.elasticsearch.ElasticsearchContainer;
-import org.testcontainers.junit.jupiter.Container;
-import org.testcontainers.junit.jupiter.Testcontainers;
 
 import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
-@Testcontainers
 public class CourseSearchControllerIntegrationTest {
 
-    // Use a lighter weight Elasticsearch image with proper readiness configuration
-    @Container
-    static ElasticsearchContainer elasticsearchContainer =
-            new ElasticsearchContainer("docker.elastic.co/elasticsearch/elasticsearch:8.15.0")
-                    .withEnv("discovery.type", "single-node")
-                    .withEnv("xpack.security.enabled", "false")
-                    .withEnv("xpack.ml.enabled", "false")
-                    .withEnv("bootstrap.memory_lock", "false")
-                    .withEnv("ES_JAVA_OPTS", "-Xms512m -Xmx512m")
-                    .withStartupTimeout(Duration.ofMinutes(5))
-                    .withReuse(true)
-                    // Add health check to ensure Elasticsearch is ready
-                    .waitingFor(org.testcontainers.containers.wait.strategy.Wait
-                            .forHttp("/_cluster/health?wait_for_status=yellow&timeout=60s")
-                            .forPort(9200)
-                            .withStartupTimeout(Duration.ofMinutes(5)));
-
     @DynamicPropertySource
     static void configureProperties(DynamicPropertyRegistry registry) {
-        registry.add("spring.elasticsearch.uris", () -> "http://" + elasticsearchContainer.getHost() + ":" + elasticsearchContainer.getMappedPort(9200));
-        registry.add("spring.elasticsearch.ssl.enabled", () -> "false");
-        registry.add("spring.elasticsearch.connection-timeout", () -> "60s");
-        registry.add("spring.elasticsearch.socket-timeout", () -> "60s");
+        TestElasticsearch.register(registry);
+        // The test manages the concrete index itself
+        registry.add("course-search.index.mode", () -> "recreate");
     }
 
     @Autowired
@@ -207,6 +191,29 @@ public class CourseSearchControllerIntegrationTest {
         }
     }
 
+    @Test
+    void testSearchWithFacets() {
+        String url = "http://localhost:" + port + "/api/search?category=Science&facets=true";
+
+        ResponseEntity<SearchResponse> response = restTemplate.exchange(
+                url,
+                HttpMethod.GET,
+                null,
+                new ParameterizedTypeReference<SearchResponse>() {}
+        );
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertNotNull(response.getBody());
+        assertEquals(1, response.getBody().getTotal());
+
+        // The category facet ignores the category filter, every other facet respects it
+        var facets = response.getBody().getFacets();
+        assertNotNull(facets, "Expected facets when requested");
+        assertEquals(4, facets.get("category").size());
+        assertEquals(List.of(new FacetBucket("ONE_TIME", 1)), facets.get("type"));
+        assertEquals(List.of(new FacetBucket("2025-11", 1)), facets.get("nextSessionDate"));
+    }
+
     @Test
     void testDebugSearchResults() {
         // This test helps debug what's actually being returned
@@ -234,13 +241,147 @@ public class CourseSearchControllerIntegrationTest {
         assertTrue(response.getBody().getTotal() >= 0, "Total should be non-negative");
     }
 
+    @Test
+    void testCursorPagingVisitsEveryCourseOnce() {
+        for (String pit : List.of("false", "true")) {
+            List<String> ids = new ArrayList<>();
+            String cursor = "";
+            do {
+                ResponseEntity<SearchResponse> response = restTemplate.exchange(
+                        "http://localhost:" + port + "/api/search?sort=title&size=1&pit=" + pit + "&cursor=" + cursor,
+                        HttpMethod.GET,
+                        null,
+                        new ParameterizedTypeReference<SearchResponse>() {}
+                );
+                assertEquals(HttpStatus.OK, response.getStatusCode());
+                response.getBody().getCourses().forEach(course -> ids.add(course.getId()));
+                cursor = response.getBody().getNextCursor();
+            } while (cursor != null && ids.size() < 10);
+
+            assertEquals(List.of("course_15", "course_14", "course_16", "course_13"), ids, "pit=" + pit);
+        }
+    }
+
+    @Test
+    void testExportStreamsEveryCourse() {
+        ResponseEntity<String> response = restTemplate.getForEntity(
+                "http://localhost:" + port + "/api/search/export?sort=title", String.class);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        List<String> lines = response.getBody().lines().toList();
+        assertEquals(4, lines.size());
+        assertTrue(lines.get(0).startsWith("{\"id\":\"course_15\""), lines.get(0));
+        assertTrue(lines.get(3).startsWith("{\"id\":\"course_13\""), lines.get(3));
+    }
+
+    @Test
+    void testTitlePrefixMatchesEdgeNgrams() {
+        assertEquals(List.of("course_15"), ids(search("/api/search?q=chem")));
+        assertEquals(List.of("course_14"), ids(search("/api/search?q=Gui")));
+    }
+
+    @Test
+    void testLastDescriptionWordMatchesAsPrefix() {
+        // "instr" and "expres" only match as prefixes of description words, never of a title
+        assertEquals(List.of("course_14"), ids(search("/api/search?q=expert%20instr")));
+        assertEquals(List.of("course_16"), ids(search("/api/search?q=expres")));
+    }
+
+    @Test
+    void testTitleSortIgnoresCase() {
+        elasticsearchOperations.save(create("course_17", "algebra for beginners", "Equations and graphs.", "Math",
+                "COURSE", "6th-8th", 11, 14, 40.00, "2025-10-01T10:00:00Z"));
+        elasticsearchOperations.indexOps(CourseDocument.class).refresh();
+
+        assertEquals(List.of("course_17", "course_15", "course_14", "course_16", "course_13"),
+                ids(search("/api/search?sort=title")));
+    }
+
+    @Test
+    void testRelevanceFavoursPopularAndUpcomingCourses() {
+        String soon = Instant.now().plus(Duration.ofDays(2)).truncatedTo(ChronoUnit.SECONDS).toString();
+        String later = Instant.now().plus(Duration.ofDays(90)).truncatedTo(ChronoUnit.SECONDS).toString();
+        CourseDocument popularSoon = create("course_20", "Drawing Club", "Sketch every week.", "Art",
+                "CLUB", "6th-8th", 11, 14, 30.00, soon);
+        popularSoon.setPopularity(500.0);
+        CourseDocument unpopularSoon = create("course_21", "Drawing Basics", "Sketch every week.", "Art",
+                "COURSE", "6th-8th", 11, 14, 30.00, soon);
+        unpopularSoon.setPopularity(10.0);
+        CourseDocument popularLater = create("course_22", "Drawing Studio", "Sketch every week.", "Art",
+                "COURSE", "6th-8th", 11, 14, 30.00, later);
+        popularLater.setPopularity(900.0);
+        List.of(popularSoon, unpopularSoon, popularLater).forEach(elasticsearchOperations::save);
+        elasticsearchOperations.indexOps(CourseDocument.class).refresh();
+
+        List<String> expected = List.of("course_20", "course_21", "course_22");
+        assertEquals(expected, ids(search("/api/search?q=drawing&sort=relevance")));
+
+        // Cursor pages share the decay origin of the first page, so the walk sees the same order
+        List<String> walked = new ArrayList<>();
+        String cursor = "";
+        do {
+            SearchResponse page = search("/api/search?q=drawing&sort=relevance&size=1&cursor=" + cursor);
+            walked.addAll(ids(page));
+            cursor = page.getNextCursor();
+        } while (cursor != null && walked.size() < 10);
+        assertEquals(expected, walked);
+    }
+
+    @Test
+    void testBatchRunsAsOneMultiSearchInRequestOrder() {
+        SearchRequest guitar = new SearchRequest();
+        guitar.setQ("guitar");
+        SearchRequest byTitle = new SearchRequest();
+        byTitle.setSort("title");
+        byTitle.setSize(2);
+        byTitle.setFacets(true);
+        SearchRequest science = new SearchRequest();
+        science.setCategory("Science");
+
+        ResponseEntity<List<SearchResponse>> response = restTemplate.exchange(
+                "http://localhost:" + port + "/api/search/batch",
+                HttpMethod.POST,
+                new HttpEntity<>(List.of(guitar, byTitle, science)),
+                new ParameterizedTypeReference<List<SearchResponse>>() {}
+        );
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        List<SearchResponse> results = response.getBody();
+        assertNotNull(results);
+        assertEquals(3, results.size());
+        assertEquals(List.of("course_14"), ids(results.get(0)));
+        assertNull(results.get(0).getFacets());
+        assertEquals(4, results.get(1).getTotal());
+        assertEquals(List.of("course_15", "course_14"), ids(results.get(1)));
+        // Facets computed through _msearch match those of a single search
+        assertEquals(search("/api/search?sort=title&size=2&facets=true").getFacets(), results.get(1).getFacets());
+        assertEquals(4, results.get(1).getFacets().get("category").size());
+        assertEquals(List.of("course_15"), ids(results.get(2)));
+    }
+
+    private SearchResponse search(String path) {
+        ResponseEntity<SearchResponse> response = restTemplate.exchange(
+                "http://localhost:" + port + path,
+                HttpMethod.GET,
+                null,
+                new ParameterizedTypeReference<SearchResponse>() {}
+        );
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertNotNull(response.getBody());
+        return response.getBody();
+    }
+
+    private static List<String> ids(SearchResponse response) {
+        return response.getCourses().stream().map(course -> course.getId()).toList();
+    }
+
     private CourseDocument create(String id, String title, String description, String category,
                                   String type, String gradeRange, int minAge, int maxAge,
                                   double price, String date) {
         CourseDocument doc = new CourseDocument();
         doc.setId(id);
         doc.setTitle(title);
-        doc.setSuggest(title); // for autocomplete
+        doc.setSuggest(DataLoaderService.titleSuggestion(title)); // for autocomplete
         doc.setDescription(description);
         doc.setCategory(category);
         doc.setType(type);
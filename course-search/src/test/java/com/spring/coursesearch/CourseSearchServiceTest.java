@@ -0,0 +1,96 @@
+package com.spring.coursesearch;
+
+import com.spring.coursesearch.entity.CourseDocument;
+import com.spring.coursesearch.entity.CourseSummaryProjection;
+import com.spring.coursesearch.services.BackendOverloadedException;
+import com.spring.coursesearch.services.CourseIndexManager;
+import com.spring.coursesearch.services.CourseSearchMetrics;
+import com.spring.coursesearch.services.CourseSearchService;
+import com.spring.coursesearch.services.ElasticsearchGuard;
+import com.spring.coursesearch.services.InMemorySearchBackend;
+import com.spring.coursesearch.services.SearchParameters;
+import com.spring.coursesearch.services.SearchResultCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.SearchHits;
+import org.springframework.data.elasticsearch.core.query.Query;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * How searches reach Elasticsearch through the guard, against mocked operations; no Elasticsearch is needed.
+ */
+public class CourseSearchServiceTest {
+
+    private final ElasticsearchOperations operations = mock(ElasticsearchOperations.class);
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testSearchesSendNoElasticsearchTimeout() {
+        when(operations.search(any(Query.class), eq(CourseSummaryProjection.class), any()))
+                .thenReturn(mock(SearchHits.class));
+        when(operations.search(any(Query.class), eq(CourseDocument.class))).thenReturn(mock(SearchHits.class));
+        when(operations.multiSearch(anyList(), eq(CourseSummaryProjection.class), any())).thenReturn(List.of());
+        CourseSearchService service = service(new ElasticsearchGuard(true, Duration.ofSeconds(2), 4, 1, 100,
+                Duration.ofMillis(500)));
+
+        service.searchCourses(search("algebra"));
+        service.searchCoursesBatch(List.of(search("guitar"), search("piano")));
+        service.suggestTitles("alg");
+
+        // A timed-out search answers with partial hits that would be cached as complete
+        ArgumentCaptor<Query> searches = ArgumentCaptor.forClass(Query.class);
+        verify(operations).search(searches.capture(), eq(CourseSummaryProjection.class), any());
+        verify(operations).search(searches.capture(), eq(CourseDocument.class));
+        ArgumentCaptor<List<Query>> batches = ArgumentCaptor.forClass(List.class);
+        verify(operations).multiSearch(batches.capture(), eq(CourseSummaryProjection.class), any());
+        searches.getAllValues().forEach(query -> assertNull(query.getTimeout()));
+        batches.getValue().forEach(query -> assertNull(query.getTimeout()));
+    }
+
+    @Test
+    void testCursorPagesAreShedBeforeOpeningAPointInTime() throws Exception {
+        ElasticsearchGuard guard = new ElasticsearchGuard(true, Duration.ofSeconds(5), 1, 1, 100, Duration.ofSeconds(5));
+        CourseSearchService service = service(guard);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Void> busy = CompletableFuture.runAsync(() -> guard.call("search", "busy", () -> {
+            try {
+                return release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        }));
+        while (guard.getInFlight() == 0) {
+            Thread.onSpinWait();
+        }
+
+        assertThrows(BackendOverloadedException.class,
+                () -> service.searchCoursesAfter(search("algebra"), null, true));
+        verify(operations, never()).openPointInTime(any(), any());
+        release.countDown();
+        busy.get();
+    }
+
+    private CourseSearchService service(ElasticsearchGuard guard) {
+        return new CourseSearchService(operations,
+                new SearchResultCache(true, 1000, Duration.ofSeconds(30), Duration.ofMinutes(10)),
+                new CourseSearchMetrics(new SimpleMeterRegistry()), new InMemorySearchBackend("elasticsearch", false),
+                guard, mock(CourseIndexManager.class));
+    }
+
+    private static SearchParameters search(String query) {
+        return SearchParameters.of(query, null, null, null, null, null, null, null, null, 0, 10);
+    }
+}
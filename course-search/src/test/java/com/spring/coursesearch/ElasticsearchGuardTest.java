@@ -0,0 +1,91 @@
+package com.spring.coursesearch;
+
+import com.spring.coursesearch.services.BackendOverloadedException;
+import com.spring.coursesearch.services.ElasticsearchGuard;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.data.elasticsearch.UncategorizedElasticsearchException;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ElasticsearchGuardTest {
+
+    @Test
+    void testIdenticalConcurrentCallsShareOneExecution() throws Exception {
+        ElasticsearchGuard guard = guard(Duration.ofSeconds(5), 4);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger executions = new AtomicInteger();
+
+        CompletableFuture<String> first = CompletableFuture.supplyAsync(() -> guard.call("search", "algebra", () -> {
+            executions.incrementAndGet();
+            await(release);
+            return "hits";
+        }));
+        while (guard.getInFlight() == 0) {
+            Thread.onSpinWait();
+        }
+        CompletableFuture<String> second = CompletableFuture.supplyAsync(
+                () -> guard.call("search", "algebra", () -> "not called"));
+        Thread.sleep(50);
+        release.countDown();
+
+        assertEquals("hits", first.get());
+        assertEquals("hits", second.get());
+        assertEquals(1, executions.get());
+    }
+
+    @Test
+    void testCallsBeyondTheLimitAreShedAndSlowCallsTimeOutAndLowerIt() {
+        ElasticsearchGuard guard = guard(Duration.ofMillis(50), 2);
+        CountDownLatch release = new CountDownLatch(1);
+
+        assertThrows(QueryTimeoutException.class, () -> guard.call("search", "a", () -> await(release)));
+        assertThrows(QueryTimeoutException.class, () -> guard.call("search", "b", () -> await(release)));
+        assertThrows(BackendOverloadedException.class, () -> guard.call("search", "c", () -> "not called"));
+
+        release.countDown();
+        while (guard.getInFlight() > 0) {
+            Thread.onSpinWait();
+        }
+        assertEquals(1, guard.getLimit());
+        assertEquals("hits", guard.call("search", "c", () -> "hits"));
+    }
+
+    @Test
+    void testOnlyOverloadFailuresLowerTheLimit() {
+        ElasticsearchGuard guard = new ElasticsearchGuard(true, Duration.ofSeconds(5), 10, 1, 100, Duration.ofSeconds(5));
+
+        assertThrows(UncategorizedElasticsearchException.class, () -> guard.call("search", "bad", () -> {
+            throw new UncategorizedElasticsearchException("parse error", 400, null, null);
+        }));
+        assertEquals(10, guard.getLimit());
+
+        assertThrows(UncategorizedElasticsearchException.class, () -> guard.call("search", "busy", () -> {
+            throw new UncategorizedElasticsearchException("rejected", 429, null, null);
+        }));
+        assertEquals(9, guard.getLimit());
+        assertThrows(DataAccessResourceFailureException.class, () -> guard.call("search", "down", () -> {
+            throw new DataAccessResourceFailureException("connection refused");
+        }));
+        assertEquals(8, guard.getLimit());
+    }
+
+    private static ElasticsearchGuard guard(Duration timeout, int limit) {
+        return new ElasticsearchGuard(true, timeout, limit, 1, 100, Duration.ofMillis(20));
+    }
+
+    private static String await(CountDownLatch latch) {
+        try {
+            latch.await();
+            return "hits";
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.spring.coursesearch;
+
+import com.spring.coursesearch.entity.CourseDocument;
+import com.spring.coursesearch.services.DataLoaderService;
+import com.spring.coursesearch.services.InMemoryCourseIndex;
+import com.spring.coursesearch.services.SearchParameters;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class InMemoryCourseIndexTest {
+
+    @Test
+    void testRelevanceCombinesPopularityAndUpcomingSession() {
+        InMemoryCourseIndex index = InMemoryCourseIndex.builder()
+                .add(course("popular-later", 900.0, Duration.ofDays(90)))
+                .add(course("unpopular-soon", 10.0, Duration.ofDays(1)))
+                .add(course("popular-soon", 500.0, Duration.ofDays(2)))
+                .add(course("unranked-soon", null, Duration.ofDays(1)))
+                .build();
+
+        List<String> ids = index.search(SearchParameters.of("guitar", null, null, null, null, null, null, null,
+                        SearchParameters.SORT_RELEVANCE, 0, 3))
+                .getSearchHits().stream().map(hit -> hit.getId()).toList();
+
+        assertEquals(List.of("popular-soon", "unpopular-soon", "unranked-soon"), ids);
+    }
+
+    @Test
+    void testStreamReadsEveryMatchInSearchOrder() {
+        InMemoryCourseIndex.Builder builder = InMemoryCourseIndex.builder();
+        for (int i = 0; i < 25; i++) {
+            CourseDocument course = course("course_" + i, i % 3 == 0 ? null : 10.0 * i, Duration.ofDays(i % 7 + 1));
+            course.setPrice(i % 4 == 0 ? null : (double) (i % 5));
+            builder.add(course);
+        }
+        InMemoryCourseIndex index = builder.build();
+
+        for (String sort : List.of(SearchParameters.SORT_UPCOMING, SearchParameters.SORT_PRICE_DESC,
+                SearchParameters.SORT_TITLE, SearchParameters.SORT_RELEVANCE)) {
+            SearchParameters all = SearchParameters.of("guitar", null, null, null, null, null, null, null, sort, 0, 100);
+            List<String> searched = index.search(all).getSearchHits().stream().map(hit -> hit.getId()).toList();
+            List<String> streamed = index.stream(all).map(hit -> hit.getId()).toList();
+            assertEquals(25, streamed.size());
+            assertEquals(searched, streamed, sort);
+        }
+    }
+
+    @Test
+    void testRemoveSessionsBeforeKeepsUndatedCourses() {
+        CourseDocument undated = course("undated", null, Duration.ZERO);
+        undated.setNextSessionDate(null);
+        InMemoryCourseIndex.Builder builder = InMemoryCourseIndex.builder()
+                .add(course("past", null, Duration.ofDays(-40)))
+                .add(course("upcoming", null, Duration.ofDays(5)))
+                .add(undated);
+
+        assertEquals(1, builder.removeSessionsBefore(Instant.now().minus(Duration.ofDays(1))));
+
+        List<String> ids = builder.build().search(SearchParameters.of("guitar", null, null, null, null, null, null,
+                        null, SearchParameters.SORT_TITLE, 0, 10))
+                .getSearchHits().stream().map(hit -> hit.getId()).sorted().toList();
+        assertEquals(List.of("undated", "upcoming"), ids);
+    }
+
+    @Test
+    void testUpdatedSuggestWeightsReorderSuggestions() {
+        CourseDocument later = course("later", null, Duration.ofDays(30));
+        later.setTitle("Guitar Later");
+        later.setSuggest(DataLoaderService.titleSuggestion(later.getTitle()));
+        later.getSuggest().setWeight(1);
+        CourseDocument sooner = course("sooner", null, Duration.ofDays(3));
+        sooner.setTitle("Guitar Sooner");
+        sooner.setSuggest(DataLoaderService.titleSuggestion(sooner.getTitle()));
+        sooner.getSuggest().setWeight(1);
+        InMemoryCourseIndex.Builder builder = InMemoryCourseIndex.builder().add(later).add(sooner);
+        InMemoryCourseIndex stale = builder.build();
+
+        // Weights as if both were indexed long before their sessions, recomputed against now
+        assertEquals(2, builder.updateSuggestWeights(course ->
+                course.getId().equals("sooner") ? 363 : 336));
+
+        assertEquals(List.of("Guitar Sooner", "Guitar Later"), builder.build().suggest("guit", 10));
+        assertEquals(List.of("Guitar Later", "Guitar Sooner"), stale.suggest("guit", 10));
+    }
+
+    private static CourseDocument course(String id, Double popularity, Duration untilNextSession) {
+        CourseDocument course = new CourseDocument();
+        course.setId(id);
+        course.setTitle("Guitar Lessons");
+        course.setPopularity(popularity);
+        course.setNextSessionDate(Instant.now().plus(untilNextSession).truncatedTo(ChronoUnit.SECONDS).toString());
+        return course;
+    }
+}
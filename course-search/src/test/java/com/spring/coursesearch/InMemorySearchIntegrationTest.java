@@ -0,0 +1,263 @@
+package com.spring.coursesearch;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.spring.coursesearch.controller.CourseSearchController.CourseSummary;
+import com.spring.coursesearch.controller.CourseSearchController.SearchRequest;
+import com.spring.coursesearch.controller.CourseSearchController.SearchResponse;
+import com.spring.coursesearch.entity.CourseSummaryProjection;
+import com.spring.coursesearch.services.SearchCursor;
+import com.spring.coursesearch.services.SearchParameters;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.*;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the API against the in-memory backend loaded from sample-courses.json; no Elasticsearch is needed.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "course-search.search.backend=memory")
+public class InMemorySearchIntegrationTest {
+
+    @LocalServerPort
+    private int port;
+
+    private final RestTemplate restTemplate = new RestTemplate();
+
+    @Test
+    void testSearchWithFilters() {
+        SearchResponse body = search("/api/search?q=algebra&category=Math&minAge=10&maxAge=14");
+
+        assertEquals(2, body.getTotal());
+        assertEquals(List.of("course_1", "course_37"),
+                body.getCourses().stream().map(c -> c.getId()).toList());
+    }
+
+    @Test
+    void testFuzzyTitleMatchAndPriceSort() {
+        SearchResponse body = search("/api/search?q=algebr&sort=priceDesc");
+
+        assertTrue(body.getTotal() >= 4, "Expected the misspelled query to match the algebra courses");
+        assertEquals("Linear Algebra", body.getCourses().get(0).getTitle());
+    }
+
+    @Test
+    void testPrefixMatchAndTitleSort() {
+        assertEquals(List.of("Dinosaurs 101"),
+                search("/api/search?q=dino").getCourses().stream().map(c -> c.getTitle()).toList());
+        assertEquals(List.of("3D Modeling", "Acrylic Painting", "Advanced Algebra"),
+                search("/api/search?sort=title&size=3").getCourses().stream().map(c -> c.getTitle()).toList());
+    }
+
+    @Test
+    void testFacetsIgnoreTheirOwnFilter() {
+        SearchResponse body = search("/api/search?category=Math&facets=true");
+
+        assertEquals(9, body.getTotal());
+        assertEquals(7, body.getFacets().get("category").size());
+        assertEquals(9, body.getFacets().get("type").stream().mapToLong(b -> b.count()).sum());
+    }
+
+    @Test
+    void testSuggestEndpoint() {
+        ResponseEntity<List<String>> response = restTemplate.exchange(
+                "http://localhost:" + port + "/api/search/suggest?q=Guit",
+                HttpMethod.GET,
+                null,
+                new ParameterizedTypeReference<List<String>>() {}
+        );
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(List.of("Guitar Lessons"), response.getBody());
+    }
+
+    @Test
+    void testCborEncodingWithCompression() throws IOException {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setAccept(List.of(MediaType.parseMediaType("application/cbor")));
+        headers.set(HttpHeaders.ACCEPT_ENCODING, "gzip");
+        ResponseEntity<byte[]> response = restTemplate.exchange(
+                "http://localhost:" + port + "/api/search?sort=title&size=50",
+                HttpMethod.GET,
+                new HttpEntity<>(headers),
+                byte[].class
+        );
+
+        assertEquals(MediaType.parseMediaType("application/cbor"), response.getHeaders().getContentType());
+        assertEquals("gzip", response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        SearchResponse body = CBORMapper.builder().findAndAddModules().build()
+                .readValue(new GZIPInputStream(new ByteArrayInputStream(response.getBody())), SearchResponse.class);
+        assertEquals(search("/api/search?sort=title&size=50").getCourses().stream().map(c -> c.getTitle()).toList(),
+                body.getCourses().stream().map(c -> c.getTitle()).toList());
+    }
+
+    @Test
+    void testSerializerWritesEveryCourseSummaryField() throws IOException {
+        ObjectMapper mapper = new ObjectMapper().findAndRegisterModules();
+        String json = restTemplate.getForObject("http://localhost:" + port + "/api/search?q=guitar", String.class);
+
+        // The serializer writes course fields by hand, so a field added to the summary or the projection must show up
+        List<String> summaryFields = fieldNames(CourseSummary.class);
+        assertEquals(summaryFields, fieldNames(CourseSummaryProjection.class));
+        JsonNode course = mapper.readTree(json).get("courses").get(0);
+        List<String> written = new ArrayList<>();
+        course.fieldNames().forEachRemaining(written::add);
+        assertEquals(summaryFields, written);
+        summaryFields.forEach(field -> assertFalse(course.get(field).isNull(), field));
+
+        // Hits and mapped courses are written the same way, and every field survives reading the response back
+        SearchResponse read = mapper.readValue(json, SearchResponse.class);
+        assertEquals(mapper.readTree(json), mapper.readTree(mapper.writeValueAsString(read)));
+    }
+
+    @Test
+    void testCursorPagingWalksTheInMemorySortOrder() {
+        for (String sort : List.of("upcoming", "priceAsc", "priceDesc", "title", "relevance")) {
+            List<String> expected = ids(search("/api/search?sort=" + sort + "&size=100"));
+            List<String> walked = new ArrayList<>();
+            String cursor = "";
+            do {
+                SearchResponse page = search("/api/search?sort=" + sort + "&size=7&pit=true&cursor=" + cursor);
+                assertEquals(60, page.getTotal());
+                walked.addAll(ids(page));
+                cursor = page.getNextCursor();
+            } while (cursor != null && walked.size() <= 60);
+            assertEquals(expected, walked, sort);
+        }
+    }
+
+    @Test
+    void testCursorFromAnotherSearchIsRejected() {
+        String cursor = SearchCursor.after(SearchParameters.of("guitar", null, null, null, null, null, null, null,
+                SearchParameters.SORT_TITLE, 0, 10), List.of("Guitar Lessons", "course_14"), null, null).encode();
+
+        // Same sort, different query: continuing would silently skip or repeat hits
+        HttpClientErrorException mismatch = assertThrows(HttpClientErrorException.class,
+                () -> search("/api/search?q=algebra&sort=title&cursor=" + cursor));
+        assertEquals(HttpStatus.BAD_REQUEST, mismatch.getStatusCode());
+
+        HttpClientErrorException malformed = assertThrows(HttpClientErrorException.class,
+                () -> search("/api/search?q=guitar&sort=title&cursor=not-a-cursor"));
+        assertEquals(HttpStatus.BAD_REQUEST, malformed.getStatusCode());
+    }
+
+    @Test
+    void testExportStreamsEveryMatchOnePerLine() throws IOException {
+        ResponseEntity<String> response = restTemplate.getForEntity(
+                "http://localhost:" + port + "/api/search/export?category=Math&sort=title", String.class);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(MediaType.parseMediaType("application/x-ndjson"), response.getHeaders().getContentType());
+        List<String> lines = response.getBody().lines().toList();
+        List<String> titles = new ArrayList<>();
+        for (String line : lines) {
+            assertTrue(line.startsWith("{") && line.endsWith("}"), line);
+            titles.add(new ObjectMapper().readTree(line).get("title").asText());
+        }
+        assertEquals(search("/api/search?category=Math&sort=title&size=50").getCourses().stream()
+                .map(c -> c.getTitle()).toList(), titles);
+        assertEquals(9, titles.size());
+    }
+
+    @Test
+    void testBatchAnswersEachSearchInRequestOrder() {
+        SearchRequest algebra = new SearchRequest();
+        algebra.setQ("algebra");
+        algebra.setCategory("Math");
+        algebra.setMinAge(10);
+        algebra.setMaxAge(14);
+        SearchRequest math = new SearchRequest();
+        math.setCategory("Math");
+        math.setSort("title");
+        math.setSize(3);
+        math.setFacets(true);
+
+        ResponseEntity<List<SearchResponse>> response = restTemplate.exchange(
+                "http://localhost:" + port + "/api/search/batch",
+                HttpMethod.POST,
+                new HttpEntity<>(List.of(algebra, math)),
+                new ParameterizedTypeReference<List<SearchResponse>>() {}
+        );
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        List<SearchResponse> results = response.getBody();
+        assertEquals(2, results.size());
+        assertEquals(List.of("course_1", "course_37"),
+                results.get(0).getCourses().stream().map(c -> c.getId()).toList());
+        assertNull(results.get(0).getFacets());
+        SearchResponse single = search("/api/search?category=Math&sort=title&size=3&facets=true");
+        assertEquals(single.getTotal(), results.get(1).getTotal());
+        assertEquals(single.getCourses().stream().map(c -> c.getId()).toList(),
+                results.get(1).getCourses().stream().map(c -> c.getId()).toList());
+        assertEquals(7, results.get(1).getFacets().get("category").size());
+    }
+
+    @Test
+    void testBatchOverTheLimitIsRejected() {
+        List<SearchRequest> requests = Collections.nCopies(21, new SearchRequest());
+
+        HttpClientErrorException tooMany = assertThrows(HttpClientErrorException.class,
+                () -> restTemplate.postForEntity("http://localhost:" + port + "/api/search/batch", requests,
+                        String.class));
+        assertEquals(HttpStatus.BAD_REQUEST, tooMany.getStatusCode());
+    }
+
+    @Test
+    void testMalformedStartDateIsRejected() {
+        HttpClientErrorException malformed = assertThrows(HttpClientErrorException.class,
+                () -> search("/api/search?startDate=next-week"));
+        assertEquals(HttpStatus.BAD_REQUEST, malformed.getStatusCode());
+
+        assertEquals(search("/api/search?startDate=2025-07-01T00:00:00Z").getTotal(),
+                search("/api/search?startDate=2025-07-01").getTotal());
+    }
+
+    @Test
+    void testBackendSwitchIsNotExposedOverHttp() {
+        HttpClientErrorException notFound = assertThrows(HttpClientErrorException.class,
+                () -> restTemplate.postForEntity("http://localhost:" + port + "/actuator/searchbackend",
+                        Map.of("mode", "elasticsearch"), String.class));
+        assertEquals(HttpStatus.NOT_FOUND, notFound.getStatusCode());
+    }
+
+    private static List<String> fieldNames(Class<?> type) {
+        return Arrays.stream(type.getDeclaredFields())
+                .filter(field -> !Modifier.isStatic(field.getModifiers()))
+                .map(Field::getName)
+                .toList();
+    }
+
+    private static List<String> ids(SearchResponse response) {
+        return response.getCourses().stream().map(c -> c.getId()).toList();
+    }
+
+    private SearchResponse search(String path) {
+        ResponseEntity<SearchResponse> response = restTemplate.exchange(
+                "http://localhost:" + port + path,
+                HttpMethod.GET,
+                null,
+                new ParameterizedTypeReference<SearchResponse>() {}
+        );
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertNotNull(response.getBody());
+        return response.getBody();
+    }
+}
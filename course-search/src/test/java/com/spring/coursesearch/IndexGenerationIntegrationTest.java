@@ -0,0 +1,57 @@
+package com.spring.coursesearch;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import com.spring.coursesearch.services.CourseIndexManager;
+import com.spring.coursesearch.services.DataLoaderService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+public class IndexGenerationIntegrationTest {
+
+    @DynamicPropertySource
+    static void configureProperties(DynamicPropertyRegistry registry) {
+        TestElasticsearch.register(registry);
+        registry.add("course-search.index.mode", () -> "reindex");
+    }
+
+    @Autowired
+    private DataLoaderService dataLoaderService;
+
+    @Autowired
+    private ElasticsearchClient elasticsearchClient;
+
+    @Test
+    void testReloadMovesAliasAndDeletesOldGeneration() throws IOException {
+        // Startup already loaded one generation
+        Set<String> before = aliasedIndices();
+        assertEquals(1, before.size());
+        long courses = elasticsearchClient.count(r -> r.index(CourseIndexManager.ALIAS)).count();
+        assertTrue(courses > 0);
+
+        dataLoaderService.loadSampleData();
+
+        Set<String> after = aliasedIndices();
+        assertEquals(1, after.size());
+        String current = after.iterator().next();
+        assertNotEquals(before.iterator().next(), current);
+        assertTrue(current.matches(CourseIndexManager.ALIAS + "-\\d{17}"), current);
+        assertFalse(elasticsearchClient.indices().exists(r -> r.index(before.iterator().next())).value(),
+                "Expected the previous generation to be deleted");
+        assertEquals(Set.of(current), elasticsearchClient.indices()
+                .get(r -> r.index(CourseIndexManager.ALIAS + "-*")).result().keySet());
+        assertEquals(courses, elasticsearchClient.count(r -> r.index(CourseIndexManager.ALIAS)).count());
+    }
+
+    private Set<String> aliasedIndices() throws IOException {
+        return elasticsearchClient.indices().getAlias(r -> r.name(CourseIndexManager.ALIAS)).result().keySet();
+    }
+}
@@ -0,0 +1,119 @@
+package com.spring.coursesearch;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import com.spring.coursesearch.controller.CourseSearchController.SearchRequest;
+import com.spring.coursesearch.controller.CourseSearchController.SearchResponse;
+import com.spring.coursesearch.services.CourseIndexManager;
+import com.spring.coursesearch.services.SearchParameters;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class PartitionedIndexIntegrationTest {
+
+    @DynamicPropertySource
+    static void configureProperties(DynamicPropertyRegistry registry) {
+        TestElasticsearch.register(registry);
+        registry.add("course-search.index.mode", () -> "reindex");
+        registry.add("course-search.index.partitioning", () -> "monthly");
+        // The sample sessions are in 2025; keep every month instead of expiring them on startup
+        registry.add("course-search.index.partition-retention", () -> "1200");
+    }
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private CourseIndexManager courseIndexManager;
+
+    @Autowired
+    private ElasticsearchClient elasticsearchClient;
+
+    private final RestTemplate restTemplate = new RestTemplate();
+
+    @AfterAll
+    void removePartitions() {
+        // Leaves the cluster without an alias, so tests that manage a concrete courses index can create it
+        courseIndexManager.deleteAllGenerations();
+    }
+
+    @Test
+    void testSearchWithStartDateReadsOnlyLaterPartitions() throws IOException {
+        Set<String> aliased = elasticsearchClient.indices()
+                .getAlias(r -> r.name(CourseIndexManager.ALIAS)).result().keySet();
+        assertEquals(6, aliased.size(), aliased::toString);
+        aliased.forEach(index -> assertTrue(index.matches(CourseIndexManager.ALIAS + "-\\d{17}-2025-\\d{2}"), index));
+
+        SearchParameters fromOctober = SearchParameters.of(null, null, null, null, null, null, null, "2025-10-01",
+                SearchParameters.SORT_UPCOMING, 0, 100);
+        List<String> months = List.of(courseIndexManager.searchIndex(fromOctober).getIndexNames()).stream()
+                .map(index -> index.substring(index.length() - 7))
+                .toList();
+        assertEquals(List.of("2025-10", "2025-11", "2025-12"), months);
+
+        SearchResponse body = restTemplate.getForObject(
+                "http://localhost:" + port + "/api/search?startDate=2025-10-01&size=100", SearchResponse.class);
+        assertNotNull(body);
+        assertEquals(24, body.getTotal());
+        assertEquals(24, body.getCourses().size());
+        body.getCourses().forEach(course -> assertTrue(course.getNextSessionDate().compareTo("2025-10-01") >= 0,
+                course.getNextSessionDate()));
+
+        SearchResponse all = restTemplate.getForObject(
+                "http://localhost:" + port + "/api/search?size=100", SearchResponse.class);
+        assertNotNull(all);
+        assertEquals(60, all.getTotal());
+
+        // Past every partition only the newest is read, and nothing in it matches
+        SearchParameters fromNextYear = SearchParameters.of(null, null, null, null, null, null, null, "2026-06-01",
+                SearchParameters.SORT_UPCOMING, 0, 100);
+        assertEquals(1, courseIndexManager.searchIndex(fromNextYear).getIndexNames().length);
+        SearchResponse none = restTemplate.getForObject(
+                "http://localhost:" + port + "/api/search?startDate=2026-06-01&size=100", SearchResponse.class);
+        assertNotNull(none);
+        assertEquals(0, none.getTotal());
+    }
+
+    @Test
+    void testBatchSearchesReadTheirOwnPartitions() {
+        SearchRequest fromOctober = new SearchRequest();
+        fromOctober.setStartDate("2025-10-01");
+        fromOctober.setSize(100);
+        SearchRequest all = new SearchRequest();
+        all.setSize(100);
+        SearchRequest fromDecember = new SearchRequest();
+        fromDecember.setStartDate("2025-12-01");
+        fromDecember.setSize(100);
+
+        ResponseEntity<List<SearchResponse>> response = restTemplate.exchange(
+                "http://localhost:" + port + "/api/search/batch",
+                HttpMethod.POST,
+                new HttpEntity<>(List.of(fromOctober, all, fromDecember)),
+                new ParameterizedTypeReference<List<SearchResponse>>() {}
+        );
+
+        List<SearchResponse> results = response.getBody();
+        assertNotNull(results);
+        assertEquals(List.of(24L, 60L, 5L), results.stream().map(SearchResponse::getTotal).toList());
+        results.get(2).getCourses().forEach(course ->
+                assertTrue(course.getNextSessionDate().startsWith("2025-12"), course.getNextSessionDate()));
+    }
+}
@@ -0,0 +1,46 @@
+package com.spring.coursesearch;
+
+import com.spring.coursesearch.services.SuggestionTrie;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SuggestionTrieTest {
+
+    @Test
+    void testLookupReturnsBestWeightedTitlesFirst() {
+        SuggestionTrie trie = SuggestionTrie.builder(3, 2)
+                .add("Introduction to Algebra", 5)
+                .add("Introduction to Coding", 50)
+                .add("Intro to Drawing", 1)
+                .add("Guitar Lessons", 10)
+                .build();
+
+        assertEquals(List.of("Introduction to Coding", "Introduction to Algebra"), trie.lookup("in"));
+        assertEquals(List.of("Guitar Lessons"), trie.lookup("gui"));
+        assertEquals(4, trie.getTitleCount());
+    }
+
+    @Test
+    void testLookupHandlesMissingAndTooLongPrefixes() {
+        SuggestionTrie trie = SuggestionTrie.builder(3, 10)
+                .add("Guitar Lessons", 1)
+                .build();
+
+        assertTrue(trie.lookup("x").isEmpty(), "Expected no titles for an unknown prefix");
+        assertNull(trie.lookup("guit"), "Expected prefixes deeper than the trie to be unanswered");
+    }
+
+    @Test
+    void testDuplicateTitlesKeepHighestWeight() {
+        SuggestionTrie trie = SuggestionTrie.builder(3, 10)
+                .add("Guitar Lessons", 1)
+                .add("Guitar Lessons", 9)
+                .add("Guitar Club", 5)
+                .build();
+
+        assertEquals(List.of("Guitar Lessons", "Guitar Club"), trie.lookup(SuggestionTrie.normalize("  GU ")));
+    }
+}
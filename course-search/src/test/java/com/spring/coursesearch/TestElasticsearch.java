@@ -0,0 +1,44 @@
+package com.spring.coursesearch;
+
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.testcontainers.containers.wait.strategy.Wait;
+import org.testcontainers.elasticsearch.ElasticsearchContainer;
+
+import java.time.Duration;
+
+/**
+ * Single-node Elasticsearch shared by every Elasticsearch-backed test class, started on first use.
+ */
+final class TestElasticsearch {
+
+    // Use a lighter weight Elasticsearch image with proper readiness configuration
+    static final ElasticsearchContainer CONTAINER =
+            new ElasticsearchContainer("docker.elastic.co/elasticsearch/elasticsearch:8.15.0")
+                    .withEnv("discovery.type", "single-node")
+                    .withEnv("xpack.security.enabled", "false")
+                    .withEnv("xpack.ml.enabled", "false")
+                    .withEnv("bootstrap.memory_lock", "false")
+                    .withEnv("ES_JAVA_OPTS", "-Xms512m -Xmx512m")
+                    .withStartupTimeout(Duration.ofMinutes(5))
+                    .withReuse(true)
+                    // Add health check to ensure Elasticsearch is ready
+                    .waitingFor(Wait.forHttp("/_cluster/health?wait_for_status=yellow&timeout=60s")
+                            .forPort(9200)
+                            .withStartupTimeout(Duration.ofMinutes(5)));
+
+    private TestElasticsearch() {
+    }
+
+    /**
+     * Starts the container if needed and points the application at it, serving searches from Elasticsearch only.
+     */
+    static void register(DynamicPropertyRegistry registry) {
+        CONTAINER.start();
+        registry.add("spring.elasticsearch.uris", () -> "http://" + CONTAINER.getHost() + ":" + CONTAINER.getMappedPort(9200));
+        registry.add("spring.elasticsearch.ssl.enabled", () -> "false");
+        registry.add("spring.elasticsearch.connection-timeout", () -> "60s");
+        registry.add("spring.elasticsearch.socket-timeout", () -> "60s");
+        registry.add("course-search.search.backend", () -> "elasticsearch");
+        registry.add("course-search.search.memory-index.enabled", () -> "false");
+    }
+}
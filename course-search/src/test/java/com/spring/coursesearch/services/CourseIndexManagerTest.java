@@ -0,0 +1,106 @@
+package com.spring.coursesearch.services;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.IndexOperations;
+import org.springframework.data.elasticsearch.core.index.AliasData;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+
+import java.time.Duration;
+import java.time.YearMonth;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Partition naming and selection, against a mocked alias; no Elasticsearch is needed.
+ */
+public class CourseIndexManagerTest {
+
+    private static final String GENERATION = "courses-20250701120000000";
+
+    @Test
+    void testParseMonth() {
+        assertEquals(YearMonth.of(2025, 7), CourseIndexManager.parseMonth("2025-07-31T23:59:59Z"));
+        assertEquals(YearMonth.of(2025, 8), CourseIndexManager.parseMonth("2025-07-31T23:00:00-02:00"));
+        assertEquals(YearMonth.of(2025, 12), CourseIndexManager.parseMonth("2025-12-01"));
+        assertNull(CourseIndexManager.parseMonth("now-1d"));
+        assertNull(CourseIndexManager.parseMonth("2025-07"));
+    }
+
+    @Test
+    void testPartitionMonth() {
+        assertEquals(YearMonth.of(2025, 7), CourseIndexManager.partitionMonth(GENERATION + "-2025-07"));
+        assertNull(CourseIndexManager.partitionMonth(GENERATION + "-undated"));
+        assertNull(CourseIndexManager.partitionMonth(GENERATION));
+        assertNull(CourseIndexManager.partitionMonth("courses"));
+    }
+
+    @Test
+    void testSearchIndexReadsOnlyPartitionsFromTheStartMonth() {
+        IndexOperations alias = alias(GENERATION + "-2025-07", GENERATION + "-2025-09", GENERATION + "-2025-08",
+                GENERATION + "-undated");
+        CourseIndexManager manager = manager(alias, Duration.ofMinutes(1));
+
+        assertArrayEquals(new String[]{GENERATION + "-2025-08", GENERATION + "-2025-09"},
+                manager.searchIndex(search("2025-08-15", false)).getIndexNames());
+        assertArrayEquals(new String[]{GENERATION + "-2025-09"},
+                manager.searchIndex(search("2025-09-01T00:00:00Z", false)).getIndexNames());
+        // Past every partition only the newest is read, where nothing matches
+        assertArrayEquals(new String[]{GENERATION + "-2025-09"},
+                manager.searchIndex(search("2026-01-01", false)).getIndexNames());
+        // Without a start date or with facets, the whole alias is read
+        assertEquals(IndexCoordinates.of(CourseIndexManager.ALIAS), manager.searchIndex(search(null, false)));
+        assertEquals(IndexCoordinates.of(CourseIndexManager.ALIAS), manager.searchIndex(search("2025-08-15", true)));
+        verify(alias, times(1)).getAliases(CourseIndexManager.ALIAS);
+    }
+
+    @Test
+    void testSearchIndexReadsTheAliasWhenItHoldsAnythingButPartitions() {
+        CourseIndexManager manager = manager(alias(GENERATION + "-2025-08", "courses-legacy"), Duration.ofMinutes(1));
+
+        assertEquals(IndexCoordinates.of(CourseIndexManager.ALIAS), manager.searchIndex(search("2025-08-15", false)));
+    }
+
+    @Test
+    void testServingPartitionsAreReadAgainAfterTheirTtl() {
+        String next = "courses-20250801120000000";
+        IndexOperations alias = alias(GENERATION + "-2025-08");
+        CourseIndexManager manager = manager(alias, Duration.ZERO);
+        assertArrayEquals(new String[]{GENERATION + "-2025-08"},
+                manager.searchIndex(search("2025-08-15", false)).getIndexNames());
+
+        // Another instance promoted a new generation
+        when(alias.getAliases(CourseIndexManager.ALIAS)).thenReturn(aliases(next + "-2025-08"));
+
+        assertArrayEquals(new String[]{next + "-2025-08"},
+                manager.searchIndex(search("2025-08-15", false)).getIndexNames());
+    }
+
+    private static CourseIndexManager manager(IndexOperations alias, Duration ttl) {
+        ElasticsearchOperations operations = mock(ElasticsearchOperations.class);
+        when(operations.indexOps(any(IndexCoordinates.class))).thenReturn(alias);
+        return new CourseIndexManager(operations, null, "monthly", ttl);
+    }
+
+    private static IndexOperations alias(String... indices) {
+        IndexOperations alias = mock(IndexOperations.class);
+        when(alias.getAliases(CourseIndexManager.ALIAS)).thenReturn(aliases(indices));
+        return alias;
+    }
+
+    private static Map<String, Set<AliasData>> aliases(String... indices) {
+        return Arrays.stream(indices).collect(Collectors.toMap(Function.identity(), index -> Set.of()));
+    }
+
+    private static SearchParameters search(String startDate, boolean facets) {
+        return SearchParameters.of(null, null, null, null, null, null, null, startDate, SearchParameters.SORT_TITLE,
+                0, 10, facets);
+    }
+}